@@ -18,10 +18,12 @@
 
 package myflink;
 
+import myflink.util.LongAggregateMap;
 import org.apache.flink.api.common.functions.AggregateFunction;
 import org.apache.flink.api.common.functions.FilterFunction;
 import org.apache.flink.api.common.functions.JoinFunction;
 import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.MapPartitionFunction;
 import org.apache.flink.api.common.operators.base.JoinOperatorBase;
 import org.apache.flink.api.common.typeinfo.TypeHint;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
@@ -36,9 +38,11 @@ import org.apache.flink.api.java.operators.UnsortedGrouping;
 import org.apache.flink.api.java.tuple.Tuple;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.api.java.tuple.Tuple5;
 import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.util.Collector;
 import scala.Int;
 
 import javax.lang.model.element.ElementVisitor;
@@ -65,7 +69,7 @@ public class BatchJob {
 
 		//WordCount(env);
 		//JoinsExample(env);
-		groupByExample(env);
+		groupByExample(env, params);
 		return;
 
 		//env.execute("Flink Batch Java API Skeleton");
@@ -153,39 +157,145 @@ public class BatchJob {
 	}
 
 
-	private static  void groupByExample(ExecutionEnvironment env) throws Exception {
+	private static  void groupByExample(ExecutionEnvironment env, ParameterTool params) throws Exception {
 
-		File file = new File("src/main/resources/wc1.txt");
+		File file = new File(params.get("input", "src/main/resources/wc1.txt"));
 		String absolutePath = file.getAbsolutePath();
 
-
 		DataSource<String> data = env.readTextFile(absolutePath);
 
-		AggregateOperator<Tuple3<Integer, Integer, Integer>> mapped =
-				data.map(new MapFunction<String, Tuple3<Integer, Integer, Integer>>() {
+		DriverWeekAverages(data).print();
+	}
+
+	/**
+	 * Count, sum and average of the value per (driverId, weekNo) of "driverId,weekNo[,value]" lines, a missing value
+	 * counts as 1. The pair is packed into one long key and every partition pre-aggregates into a primitive hash map
+	 * before the shuffle, so only one record per distinct key and partition crosses the network.
+	 */
+	public static DataSet<Tuple5<Integer, Integer, Long, Long, Double>> DriverWeekAverages(DataSet<String> lines) {
+		return lines
+				.mapPartition(new DriverWeekCombiner())
+				.groupBy(0)
+				.reduce((a, b) -> {
+					a.f1 += b.f1;
+					a.f2 += b.f2;
+					return a;
+				})
+				.map(new MapFunction<Tuple3<Long, Long, Long>, Tuple5<Integer, Integer, Long, Long, Double>>() {
 					@Override
-					public Tuple3<Integer, Integer, Integer> map(String s) throws Exception {
-						String[] tokens= s.split(",");
-						return new Tuple3<>(Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]),1);
+					public Tuple5<Integer, Integer, Long, Long, Double> map(Tuple3<Long, Long, Long> t) {
+						return new Tuple5<>(DriverId(t.f0), WeekNo(t.f0), t.f1, t.f2, (double) t.f2 / t.f1);
 					}
-				})
-				.groupBy(0,1)
-				.sum(2);
-				//.aggregate(new AggregateFunction<Tuple2<Integer, Integer>, AverageAccumulator, Tuple3<Integer, Integer, Integer>>() {
-		mapped.print();
+				});
+	}
+
+	public static long PackDriverWeek(int driverId, int weekNo) {
+		return ((long) driverId << 32) | (weekNo & 0xFFFFFFFFL);
+	}
+
+	public static int DriverId(long driverWeek) {
+		return (int) (driverWeek >>> 32);
+	}
+
+	public static int WeekNo(long driverWeek) {
+		return (int) driverWeek;
+	}
+
+	/**
+	 * Parses the lines of a partition into (packed key, count, sum) partial aggregates. The map is emitted and
+	 * cleared whenever it reaches maxKeys, which bounds its memory for inputs with many distinct keys.
+	 */
+	public static class DriverWeekCombiner implements MapPartitionFunction<String, Tuple3<Long, Long, Long>> {
+
+		private final int maxKeys;
+
+		public DriverWeekCombiner() {
+			this(1 << 20);
+		}
+
+		public DriverWeekCombiner(int maxKeys) {
+			this.maxKeys = maxKeys;
+		}
+
+		@Override
+		public void mapPartition(Iterable<String> lines, Collector<Tuple3<Long, Long, Long>> out) {
+			LongAggregateMap partials = new LongAggregateMap(1 << 12);
+			Tuple3<Long, Long, Long> partial = new Tuple3<>();
+
+			for (String line : lines) {
+				// driverId,weekNo[,value] without String.split and Integer boxing
+				int firstComma = line.indexOf(',');
+				if (firstComma < 0) {
+					throw new NumberFormatException("Not a driverId,weekNo line: " + line);
+				}
+				int secondComma = line.indexOf(',', firstComma + 1);
+				int weekEnd = secondComma < 0 ? line.length() : secondComma;
+				int driverId = ParseInt(line, 0, firstComma);
+				int weekNo = ParseInt(line, firstComma + 1, weekEnd);
+				long value = secondComma < 0 ? 1 : ParseLong(line, secondComma + 1, line.length());
+
+				partials.add(PackDriverWeek(driverId, weekNo), value);
+				if (partials.size() >= maxKeys) {
+					emit(partials, partial, out);
+				}
+			}
+			emit(partials, partial, out);
+		}
+
+		private static void emit(LongAggregateMap partials, Tuple3<Long, Long, Long> partial,
+								 Collector<Tuple3<Long, Long, Long>> out) {
+			for (int slot = 0; slot < partials.capacity(); slot++) {
+				if (partials.isUsed(slot)) {
+					partial.f0 = partials.keyAt(slot);
+					partial.f1 = partials.countAt(slot);
+					partial.f2 = partials.sumAt(slot);
+					out.collect(partial);
+				}
+			}
+			partials.clear();
+		}
 	}
 
-	// the accumulator, which holds the state of the in-flight aggregate
-	public static class AverageAccumulator {
-		long driveID;
-		long weekNo;
-		long count;
+	private static int ParseInt(String s, int from, int to) {
+		try {
+			return Math.toIntExact(ParseLong(s, from, to));
+		} catch (ArithmeticException e) {
+			throw new NumberFormatException("Out of int range: " + s.substring(from, to).trim());
+		}
+	}
 
-		public AverageAccumulator(){
-			driveID=0;
-			weekNo=0;
-			count=0;
+	/**
+	 * Parses s[from, to) without a substring, ignoring whitespace around the number. Overflows throw a
+	 * NumberFormatException like Long.parseLong.
+	 */
+	private static long ParseLong(String s, int from, int to) {
+		while (from < to && Character.isWhitespace(s.charAt(from))) {
+			from++;
+		}
+		while (to > from && Character.isWhitespace(s.charAt(to - 1))) {
+			to--;
+		}
+		boolean negative = from < to && s.charAt(from) == '-';
+		if (from == to || (negative && from + 1 == to)) {
+			throw new NumberFormatException("Empty number in: " + s);
+		}
+		//accumulated negative, so that Long.MIN_VALUE fits
+		long value = 0;
+		for (int i = negative ? from + 1 : from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Not a number: " + s.substring(from, to));
+			}
+			try {
+				value = Math.subtractExact(Math.multiplyExact(value, 10), c - '0');
+			} catch (ArithmeticException e) {
+				throw new NumberFormatException("Out of long range: " + s.substring(from, to));
+			}
+		}
+		if (!negative && value == Long.MIN_VALUE) {
+			throw new NumberFormatException("Out of long range: " + s.substring(from, to));
 		}
+		return negative ? value : -value;
 	}
 
 
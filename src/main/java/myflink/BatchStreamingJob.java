@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink;
+
+import org.apache.flink.api.common.RuntimeExecutionMode;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.api.java.tuple.Tuple5;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.co.KeyedCoProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.io.File;
+
+/**
+ * The word count, join and groupBy examples of {@link BatchJob} on the DataStream API in
+ * {@link RuntimeExecutionMode#BATCH}: keyed operators read their input sorted by key, emit only the final result
+ * per key and every exchange is a blocking, sort-based shuffle.
+ */
+public class BatchStreamingJob {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+
+        final StreamExecutionEnvironment env = CreateBatchEnvironment(params);
+
+        switch (params.get("e", "groupby")) {
+            case "wordcount":
+                WordCount(env.readTextFile(new File(params.get("input", "src/main/resources/wc.txt")).getAbsolutePath()))
+                        .print();
+                break;
+            case "join":
+                Join(env.readTextFile(new File("src/main/resources/IDName.txt").getAbsolutePath()),
+                        env.readTextFile(new File("src/main/resources/IDOther.txt").getAbsolutePath()))
+                        .print();
+                break;
+            case "groupby":
+                DriverWeekAverages(env.readTextFile(new File(params.get("input", "src/main/resources/wc1.txt")).getAbsolutePath()))
+                        .print();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown example " + params.get("e"));
+        }
+
+        env.execute("Batch DataStream " + params.get("e", "groupby"));
+    }
+
+    /**
+     * Local environment in batch execution mode with blocking sort-based shuffles (--p sets the parallelism).
+     */
+    public static StreamExecutionEnvironment CreateBatchEnvironment(ParameterTool params) {
+        Configuration config = new Configuration();
+        //every blocking exchange writes one sorted, compressed file per subtask instead of one file per consumer
+        config.setString("execution.batch-shuffle-mode", "ALL_EXCHANGES_BLOCKING");
+        config.setInteger("taskmanager.network.sort-shuffle.min-parallelism", 1);
+        config.setBoolean("taskmanager.network.blocking-shuffle.compression.enabled", true);
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(
+                params.getInt("p", Runtime.getRuntime().availableProcessors()), config);
+        env.setRuntimeMode(RuntimeExecutionMode.BATCH);
+        env.getConfig().setGlobalJobParameters(params);
+        return env;
+    }
+
+    /**
+     * Counts the names starting with "M", as {@code BatchJob.WordCount}.
+     */
+    public static DataStream<Tuple2<String, Integer>> WordCount(DataStream<String> names) {
+        return names
+                .filter(s -> s.startsWith("M"))
+                .map(s -> Tuple2.of(s, 1))
+                .returns(TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}))
+                .keyBy(t -> t.f0)
+                .sum(1);
+    }
+
+    /**
+     * Inner join of "id,name" and "id,location" lines on the id, as {@code BatchJob.JoinsExample}.
+     */
+    public static DataStream<Tuple3<Integer, String, String>> Join(DataStream<String> persons, DataStream<String> locations) {
+        MapFunction<String, Tuple2<Integer, String>> parser = s -> {
+            String[] words = s.split(",");
+            return new Tuple2<>(Integer.parseInt(words[0]), words[1]);
+        };
+        TypeInformation<Tuple2<Integer, String>> idValue = TypeInformation.of(new TypeHint<Tuple2<Integer, String>>() {});
+
+        return persons.map(parser).returns(idValue)
+                .connect(locations.map(parser).returns(idValue))
+                .keyBy(p -> p.f0, l -> l.f0)
+                .process(new HashJoin());
+    }
+
+    /**
+     * Symmetric hash join, each record is joined with the records of the other side seen so far for its key and
+     * then kept for the records still to come. In batch mode the state only ever holds one key.
+     */
+    public static class HashJoin extends KeyedCoProcessFunction<Integer, Tuple2<Integer, String>, Tuple2<Integer, String>,
+            Tuple3<Integer, String, String>> {
+
+        private transient ListState<String> names;
+        private transient ListState<String> locations;
+
+        @Override
+        public void open(Configuration parameters) {
+            names = getRuntimeContext().getListState(new ListStateDescriptor<>("joinNames", String.class));
+            locations = getRuntimeContext().getListState(new ListStateDescriptor<>("joinLocations", String.class));
+        }
+
+        @Override
+        public void processElement1(Tuple2<Integer, String> person, Context ctx,
+                                    Collector<Tuple3<Integer, String, String>> out) throws Exception {
+            for (String location : locations.get()) {
+                out.collect(new Tuple3<>(person.f0, person.f1, location));
+            }
+            names.add(person.f1);
+        }
+
+        @Override
+        public void processElement2(Tuple2<Integer, String> location, Context ctx,
+                                    Collector<Tuple3<Integer, String, String>> out) throws Exception {
+            for (String name : names.get()) {
+                out.collect(new Tuple3<>(location.f0, name, location.f1));
+            }
+            locations.add(location.f1);
+        }
+    }
+
+    /**
+     * Count, sum and average per (driverId, weekNo), as {@link BatchJob#DriverWeekAverages}. The batch mode has no
+     * combiner, the keyed reduce sees the sorted records of one key after the other and emits once per key.
+     */
+    public static DataStream<Tuple5<Integer, Integer, Long, Long, Double>> DriverWeekAverages(DataStream<String> lines) {
+        return lines
+                .map(new MapFunction<String, Tuple3<Long, Long, Long>>() {
+                    @Override
+                    public Tuple3<Long, Long, Long> map(String line) {
+                        String[] tokens = line.split(",");
+                        long key = BatchJob.PackDriverWeek(Integer.parseInt(tokens[0].trim()), Integer.parseInt(tokens[1].trim()));
+                        return new Tuple3<>(key, 1L, tokens.length > 2 ? Long.parseLong(tokens[2].trim()) : 1L);
+                    }
+                })
+                .keyBy(t -> t.f0)
+                .reduce((a, b) -> {
+                    a.f1 += b.f1;
+                    a.f2 += b.f2;
+                    return a;
+                })
+                .map(new MapFunction<Tuple3<Long, Long, Long>, Tuple5<Integer, Integer, Long, Long, Double>>() {
+                    @Override
+                    public Tuple5<Integer, Integer, Long, Long, Double> map(Tuple3<Long, Long, Long> t) {
+                        return new Tuple5<>(BatchJob.DriverId(t.f0), BatchJob.WeekNo(t.f0), t.f1, t.f2, (double) t.f2 / t.f1);
+                    }
+                });
+    }
+}
@@ -1,7 +1,15 @@
 package myflink;
 
+import myflink.columnar.AirQualityColumn;
+import myflink.columnar.ColumnarAirQualitySource;
+import myflink.columnar.ColumnarWriter;
+import myflink.columnar.RangePredicate;
+import myflink.operators.ArgExtremum;
+import myflink.operators.UpsertCompactionOperator;
+import org.apache.flink.api.common.functions.FlatMapFunction;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.common.functions.ReduceFunction;
+import org.apache.flink.api.common.typeinfo.TypeHint;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
 import org.apache.flink.api.java.tuple.Tuple4;
@@ -13,10 +21,12 @@ import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.api.windowing.assigners.TumblingProcessingTimeWindows;
 import org.apache.flink.streaming.api.windowing.assigners.TumblingTimeWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.util.Collector;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 
 public class COQueries {
 
@@ -60,146 +70,355 @@ public class COQueries {
             config.setString("state.backend", params.get("sb"));
         }
 
-        //example
-        if (params.has("e")) {
-            example = Integer.parseInt(params.get("e"));
-        }
+        //example, 0 runs all --queries (default 1,2,4) in one job over a single scan of the input
+        example = params.getInt("e", 4);
 
 
         final StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironmentWithWebUI(config);
 
-
-        example = 4;//106;
+        //object reuse, chained operators hand records over without a defensive copy
+        if (params.getBoolean("or", false)) {
+            env.getConfig().enableObjectReuse();
+        }
+        env.getConfig().setGlobalJobParameters(params);
 
         switch (example) {
+            case 0:
+                SharedScan(env, params.get("queries", "1,2,4").split(","));
+                break;
             case 1:
                 Query1(env);
+                break;
             case 2:
                 Query2(env);
+                break;
             case 4:
                 Query4(env);
+                break;
             default:
                 break;
         }
     }
 
-    private static void Query1(StreamExecutionEnvironment env) throws Exception {
-        File file = new File("src/main/resources/data.txt");
-        String absolutePath = file.getAbsolutePath();
+    /**
+     * Runs the given queries in one job: the file is read and every row parsed into an {@link AirQualityRecord}
+     * once, and the parsed records are fanned out to all queries.
+     */
+    public static void SharedScan(StreamExecutionEnvironment env, String[] queries) throws Exception {
+        DataStream<AirQualityRecord> records = AirQualityRecords(env, EnumSet.allOf(AirQualityColumn.class),
+                Collections.emptyList());
+
+        for (String query : queries) {
+            switch (query.trim()) {
+                case "1":
+                    Query1Plan(records).print();
+                    break;
+                case "2":
+                    Query2Plan(records).print();
+                    break;
+                case "4":
+                    Query4Plan(records).print();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown query " + query);
+            }
+        }
+
+        env.execute("Shared scan of queries " + String.join(",", queries));
+    }
+
+    /**
+     * The air quality file, --input or src/main/resources/data.txt.
+     */
+    public static DataStream<String> ReadAirQuality(StreamExecutionEnvironment env) {
+        ParameterTool params = ParameterTool.fromMap(env.getConfig().getGlobalJobParameters().toMap());
+        return env.readTextFile(new File(params.get("input", "src/main/resources/data.txt")).getAbsolutePath());
+    }
+
+    /**
+     * The parsed air quality records. With --columnar the columnar file written by {@link ColumnarWriter} is read
+     * instead of the CSV: only the projected columns are decoded and blocks ruled out by the predicates are
+     * skipped. The CSV path parses all columns and leaves the filtering to the query.
+     */
+    public static DataStream<AirQualityRecord> AirQualityRecords(StreamExecutionEnvironment env,
+                                                                 EnumSet<AirQualityColumn> projection,
+                                                                 List<RangePredicate> predicates) {
+        ParameterTool params = ParameterTool.fromMap(env.getConfig().getGlobalJobParameters().toMap());
+        if (params.has("columnar")) {
+            return env.addSource(new ColumnarAirQualitySource(params.get("columnar"), projection, predicates))
+                    .name("Columnar air quality");
+        }
+        return ParseAirQuality(ReadAirQuality(env));
+    }
+
+    public static DataStream<AirQualityRecord> ParseAirQuality(DataStream<String> rows) {
+        return rows.map(AirQualityRecord::fromString).name("Parse air quality");
+    }
+
+    /**
+     * The columns of an air quality row the queries use: 0 state code, 1 county code, 16 arithmetic mean and
+     * 28 date.
+     */
+    public static class AirQualityRecord {
+        public int StateCode;
+        public int CountyCode;
+        public double ArithmeticMean;
+        //the mean as written in the row, so Query1 prints it like the row based parsers do
+        public String ArithmeticMeanText;
+        public String Date;
+
+        public AirQualityRecord() {
+        }
+
+        /**
+         * Scans the row for the four columns, the others are skipped without creating strings for them.
+         */
+        public static AirQualityRecord fromString(String s) {
+            AirQualityRecord record = new AirQualityRecord();
+            int start = 0;
+            for (int column = 0; column <= 28; column++) {
+                int end = s.indexOf(',', start);
+                if (end < 0) {
+                    end = s.length();
+                }
+                switch (column) {
+                    case 0:
+                        record.StateCode = Integer.parseInt(s.substring(start, end));
+                        break;
+                    case 1:
+                        record.CountyCode = Integer.parseInt(s.substring(start, end));
+                        break;
+                    case 16:
+                        record.ArithmeticMeanText = s.substring(start, end);
+                        record.ArithmeticMean = Double.parseDouble(record.ArithmeticMeanText);
+                        break;
+                    case 28:
+                        record.Date = s.substring(start, end);
+                        break;
+                    default:
+                        break;
+                }
+                start = end + 1;
+            }
+            return record;
+        }
+
+        /**
+         * The year of the yyyy-MM-dd date.
+         */
+        public int year() {
+            return Integer.parseInt(Date.substring(0, 4));
+        }
+
+        @Override
+        public String toString() {
+            return StateCode + " " + CountyCode + " " + ArithmeticMean + " " + Date;
+        }
+    }
 
+    /**
+     * Query1 on parsed records: running count of the rows of county 31. The mean is the text of the row, like in
+     * the standalone Query1; records of the columnar source have no row text, their mean is the formatted double.
+     */
+    public static DataStream<Tuple3<Integer, String, Integer>> Query1Plan(DataStream<AirQualityRecord> records) {
+        return records
+                .filter(record -> record.CountyCode == 31)
+                .map(record -> new Tuple3<>(record.CountyCode, record.ArithmeticMeanText != null
+                        ? record.ArithmeticMeanText : String.valueOf(record.ArithmeticMean), 1))
+                .returns(new TypeHint<Tuple3<Integer, String, Integer>>() {})
+                .keyBy(row -> row.f0)
+                .sum(2);
+    }
+
+    private static void Query1(StreamExecutionEnvironment env) throws Exception {
         //env.readFile(FileInputFormat.  absolutePath, )
 
         //open socket with nc -l 9999 before running the program
-        DataStream<String> data = env.readTextFile(absolutePath);
+        ParameterTool params = ParameterTool.fromMap(env.getConfig().getGlobalJobParameters().toMap());
+        if (params.has("columnar")) {
+            //only the blocks whose zone map contains county 31 are read, and only two columns of them
+            Query1Plan(AirQualityRecords(env,
+                    EnumSet.of(AirQualityColumn.COUNTY_CODE, AirQualityColumn.ARITHMETIC_MEAN),
+                    Collections.singletonList(new RangePredicate(AirQualityColumn.COUNTY_CODE, 31, 31))))
+                    .print();
+            env.execute("Query filtered sum");
+            return;
+        }
+
+        DataStream<String> data = ReadAirQuality(env);
         //env.socketTextStream("localhost", 9999);
 
         DataStream<Tuple3<Integer, String, Integer>> count =
                 data
-                        .map(new MapFunction<String, Tuple3<Integer, String, Integer>>() {
-                            @Override
-                            public Tuple3<Integer, String, Integer> map(String s) throws Exception {
-                                String[] cols = s.split(",");
-                                return new Tuple3<>(Integer.parseInt(cols[1]), cols[16], 1); //county, arithmatic mean, count
-                            }
-                        })
-                        .filter(row -> row.f0 == 31)
+                        .flatMap(new Query1FilteringParser(31))
                         .keyBy(0) //similar to group in batch processing
                         .sum(2);
 
+        //--compact millis: one update per county and interval instead of one per row
+        if (params.getLong("compact", 0) > 0) {
+            count = UpsertCompactionOperator.compact(count, row -> row.f0, params.getLong("compact"),
+                    params.getInt("compactkeys", 100_000));
+        }
+
         count.print();
 
         env.execute("Query filtered sum");
     }
 
-    //Which state has more emission  - Max
-    //Based on all the collected data average
-    private static void Query2(StreamExecutionEnvironment env) throws Exception {
+    /**
+     * Parses a row into (county, arithmetic mean, 1). The output tuple is reused, the filter chained behind it
+     * only reads it and the keyBy serializes it before the next row is parsed.
+     */
+    public static class Query1Parser implements MapFunction<String, Tuple3<Integer, String, Integer>> {
+        private final Tuple3<Integer, String, Integer> reuse = new Tuple3<>();
+
+        @Override
+        public Tuple3<Integer, String, Integer> map(String s) throws Exception {
+            String[] cols = s.split(",");
+            reuse.f0 = Integer.parseInt(cols[1]); //county
+            reuse.f1 = cols[16]; //arithmatic mean
+            reuse.f2 = 1; //count
+            return reuse;
+        }
+    }
 
-        File file = new File("src/main/resources/data.txt");
-        String absolutePath = file.getAbsolutePath();
+    /**
+     * {@link Query1Parser} with the county filter pushed into the tokenizer: column 1 is parsed in place first,
+     * rows of another county are dropped without looking at the rest of the row, and only for matching rows the
+     * line is scanned on to column 16. No token array and no strings for the skipped columns are created.
+     * Malformed rows fail the job like in Query1Parser, only that rows of another county are not checked for
+     * the columns behind the county.
+     */
+    public static class Query1FilteringParser implements FlatMapFunction<String, Tuple3<Integer, String, Integer>> {
+        private final int county;
+        private final Tuple3<Integer, String, Integer> reuse = new Tuple3<>();
+
+        public Query1FilteringParser(int county) {
+            this.county = county;
+        }
 
-        DataStream<String> data = env.readTextFile(absolutePath);
+        @Override
+        public void flatMap(String s, Collector<Tuple3<Integer, String, Integer>> out) throws Exception {
+            int start = s.indexOf(',') + 1;
+            if (start == 0) {
+                throw new IllegalArgumentException("No county column: " + s);
+            }
+
+            //column 1, the county, parsed without a substring
+            int value = 0;
+            int i = start;
+            for (; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == ',') {
+                    break;
+                }
+                if (c < '0' || c > '9') {
+                    throw new NumberFormatException("County is not a number: " + s);
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (i == start) {
+                throw new NumberFormatException("County is empty: " + s);
+            }
+            if (value != county) {
+                return;
+            }
+
+            //skip columns 2 to 15, i ends on the comma in front of column 16
+            for (int column = 2; column < 16 && i >= 0; column++) {
+                i = s.indexOf(',', i + 1);
+            }
+            if (i < 0) {
+                throw new IllegalArgumentException("No arithmetic mean column: " + s);
+            }
+            int end = s.indexOf(',', i + 1);
+
+            reuse.f0 = value; //county
+            reuse.f1 = s.substring(i + 1, end < 0 ? s.length() : end); //arithmatic mean
+            reuse.f2 = 1; //count
+            out.collect(reuse);
+        }
+    }
 
-        DataStream<Tuple2<Integer, Double>> count =
-                data
-                        .map(new MapFunction<String, Tuple3<Integer, Double, Integer>>() {
-                            @Override
-                            public Tuple3<Integer, Double, Integer> map(String s) throws Exception {
-                                String[] cols = s.split(",");
-                                return new Tuple3<>(Integer.parseInt(cols[0]), Double.parseDouble(cols[16]), 1); //state code, arithmatic mean, count
-                            }
-                        })
-                        .keyBy(0) //similar to group in batch processing
-                        .reduce(new ReduceFunction<Tuple3<Integer, Double, Integer>>() {
-                            @Override
-                            public Tuple3<Integer, Double, Integer> reduce(Tuple3<Integer, Double, Integer> t2,
-                                                                           Tuple3<Integer, Double, Integer> t1) throws Exception {
-                                return new Tuple3<>(t1.f0, t1.f1 + t2.f1, t1.f2 + t2.f2);
-                            }
-                        })
-                        .map(new MapFunction<Tuple3<Integer, Double, Integer>, Tuple2<Integer, Double>>() {
-                            @Override
-                            public Tuple2<Integer, Double> map(Tuple3<Integer, Double, Integer> t3) throws Exception {
-                                return new Tuple2<Integer, Double>(t3.f0, t3.f1 / t3.f2);
-                            }
-                        })
-
-                        .keyBy(0)
-                        .max(1);
+    //Which state has more emission  - Max
+    //Based on all the collected data average
+    private static void Query2(StreamExecutionEnvironment env) throws Exception {
 
+        DataStream<Tuple2<Integer, Double>> count = Query2Plan(AirQualityRecords(env,
+                EnumSet.of(AirQualityColumn.STATE_CODE, AirQualityColumn.ARITHMETIC_MEAN), Collections.emptyList()));
 
         count.print();
 
         env.execute("Query filtered sum");
     }
 
+    public static DataStream<Tuple2<Integer, Double>> Query2Plan(DataStream<AirQualityRecord> records) {
+        DataStream<Tuple2<Integer, Double>> averages = records
+                .map(new MapFunction<AirQualityRecord, Tuple3<Integer, Double, Integer>>() {
+                    @Override
+                    public Tuple3<Integer, Double, Integer> map(AirQualityRecord record) throws Exception {
+                        return new Tuple3<>(record.StateCode, record.ArithmeticMean, 1); //state code, arithmatic mean, count
+                    }
+                })
+                .keyBy(t -> t.f0) //similar to group in batch processing
+                .reduce(new ReduceFunction<Tuple3<Integer, Double, Integer>>() {
+                    @Override
+                    public Tuple3<Integer, Double, Integer> reduce(Tuple3<Integer, Double, Integer> t2,
+                                                                   Tuple3<Integer, Double, Integer> t1) throws Exception {
+                        return new Tuple3<>(t1.f0, t1.f1 + t2.f1, t1.f2 + t2.f2);
+                    }
+                })
+                .map(new MapFunction<Tuple3<Integer, Double, Integer>, Tuple2<Integer, Double>>() {
+                    @Override
+                    public Tuple2<Integer, Double> map(Tuple3<Integer, Double, Integer> t3) throws Exception {
+                        return new Tuple2<Integer, Double>(t3.f0, t3.f1 / t3.f2);
+                    }
+                });
+
+        //the state with the highest average so far, a keyBy(0).max(1) would only give every state its own max
+        return ArgExtremum.running(averages, t -> t.f0, t -> t.f1, true);
+    }
+
     //Which state has lowest emission with a window size of one year (
 
     private static void Query4(StreamExecutionEnvironment env) throws Exception {
 
-        File file = new File("src/main/resources/data.txt");
-        String absolutePath = file.getAbsolutePath();
-
-        DataStream<String> data = env.readTextFile(absolutePath);
-
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-
-        DataStream<Tuple3<Integer, Double, Integer>> count =
-                data
-                        .map(new MapFunction<String, Tuple4<Integer, Double, Date, Integer>>() {
-                            @Override
-                            public Tuple4<Integer, Double, Date, Integer> map(String s) throws Exception {
-                                String[] cols = s.split(",");
-                                return new Tuple4<>(Integer.parseInt(cols[0]),
-                                        Double.parseDouble(cols[16]),
-                                        dateFormat.parse(cols[28]),
-                                        1);
-                                //0 state code, 16 arithmatic mean, 28 date, count
-                            }
-                        })
-                        .keyBy(0) //Key be state code, then we will do windowsing
-                        .window(TumblingProcessingTimeWindows.of(Time.days(365)))
-                        .reduce(new ReduceFunction<Tuple4<Integer, Double, Date, Integer>>() {
-                            @Override
-                            public Tuple4<Integer, Double, Date, Integer> reduce(Tuple4<Integer, Double, Date, Integer> t2,
-                                                                                 Tuple4<Integer, Double, Date, Integer> t1) throws Exception {
-                                return new Tuple4<>(t1.f0, t1.f1 + t2.f1, t1.f2, t1.f3 + t2.f3);
-                            }
-                        })
-                        .map(new MapFunction<Tuple4<Integer, Double, Date, Integer>, Tuple3<Integer, Double, Integer>>() {
-                            @Override
-                            public Tuple3<Integer, Double, Integer> map(Tuple4<Integer, Double, Date, Integer> t3) throws Exception {
-                                return new Tuple3<>(t3.f0, t3.f1 / t3.f3, t3.f2.getYear());
-                            }
-                        })
-
-                        .keyBy(0)
-                        .min(1);
-
+        DataStream<Tuple3<Integer, Double, Integer>> count = Query4Plan(AirQualityRecords(env,
+                EnumSet.of(AirQualityColumn.STATE_CODE, AirQualityColumn.ARITHMETIC_MEAN, AirQualityColumn.DATE),
+                Collections.emptyList()));
 
         count.print();
 
         env.execute("Query filtered sum");
     }
 
+    public static DataStream<Tuple3<Integer, Double, Integer>> Query4Plan(DataStream<AirQualityRecord> records) {
+        DataStream<Tuple3<Integer, Double, Integer>> averages = records
+                .map(new MapFunction<AirQualityRecord, Tuple4<Integer, Double, Integer, Integer>>() {
+                    @Override
+                    public Tuple4<Integer, Double, Integer, Integer> map(AirQualityRecord record) throws Exception {
+                        return new Tuple4<>(record.StateCode, record.ArithmeticMean, record.year(), 1);
+                        //state code, arithmatic mean, year, count
+                    }
+                })
+                .keyBy(0) //Key be state code, then we will do windowsing
+                .window(TumblingProcessingTimeWindows.of(Time.days(365)))
+                .reduce(new ReduceFunction<Tuple4<Integer, Double, Integer, Integer>>() {
+                    @Override
+                    public Tuple4<Integer, Double, Integer, Integer> reduce(Tuple4<Integer, Double, Integer, Integer> t2,
+                                                                         Tuple4<Integer, Double, Integer, Integer> t1) throws Exception {
+                        return new Tuple4<>(t1.f0, t1.f1 + t2.f1, t1.f2, t1.f3 + t2.f3);
+                    }
+                })
+                .map(new MapFunction<Tuple4<Integer, Double, Integer, Integer>, Tuple3<Integer, Double, Integer>>() {
+                    @Override
+                    public Tuple3<Integer, Double, Integer> map(Tuple4<Integer, Double, Integer, Integer> t3) throws Exception {
+                        return new Tuple3<>(t3.f0, t3.f1 / t3.f3, t3.f2);
+                    }
+                });
+
+        //the state with the lowest average of every window
+        return ArgExtremum.windowed(averages, t -> t.f1, false, false, 1000);
+    }
+
 }
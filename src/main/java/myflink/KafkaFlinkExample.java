@@ -1,71 +1,127 @@
 package myflink;
 
-import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.serialization.SimpleStringSchema;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.CheckpointingMode;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaProducer;
+import org.apache.flink.streaming.connectors.kafka.KafkaSerializationSchema;
+import org.apache.kafka.clients.producer.ProducerRecord;
 
-import java.io.File;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 import java.util.Properties;
 
 
+/**
+ * Consume-transform-produce pipeline: reads strings from the input topic, upper-cases them and writes them to the
+ * output topic inside Kafka transactions that are committed with the Flink checkpoints (exactly-once).
+ *
+ * <p>Parameters: --bootstrap.servers, --input-topic, --output-topic, --security.protocol (SASL_SSL or PLAINTEXT),
+ * --username, --password, --truststore (a JKS file, required unless PLAINTEXT) with --truststore.type and
+ * --truststore.password, and the producer batching settings --linger.ms, --batch.size, --compression.type.
+ */
 public class KafkaFlinkExample {
 
+    //must not be larger than transaction.max.timeout.ms of the broker, which is 15 minutes by default
+    private static final String TRANSACTION_TIMEOUT_MS = "900000";
+
     public static void main(String[] args) throws Exception {
 
-        /*
-        * bootstrap_servers=f"{host}:{sasl_port}",
-   sasl_mechanism="PLAIN",
-   sasl_plain_password=password,
-   sasl_plain_username=username,
-   security_protocol="SASL_SSL",
-   ssl_cafile="ca.crt",
-        * */
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        Properties props = KafkaProperties(params);
 
+        StreamExecutionEnvironment environment = StreamExecutionEnvironment.getExecutionEnvironment();
+        environment.enableCheckpointing(params.getLong("ci", 10000), CheckpointingMode.EXACTLY_ONCE);
+        if (params.getBoolean("or", false)) {
+            environment.getConfig().enableObjectReuse();
+        }
 
-        Properties props = new Properties();
-        props.put("bootstrap.servers", "kafka-2841cbd0-kth-3cbd.aivencloud.com:16173");
-        props.put("sasl_mechanism", "PLAIN");
-        props.put("sasl_plain_password", "cjynhlerx4rbumtw");
-        props.put("sasl_plain_username", "avnadmin");
-        props.put("security_protocol", "SASL_SSL");
-
-        File file = new File("src/main/resources/ca.pem");
-        String path = file.getAbsolutePath();
-        props.put("ssl_cafile", path);
-
-//        props.put("security.protocol", "SSL");
-//        props.put("ssl.endpoint.identification.algorithm", "");
-//        props.put("ssl.truststore.location", "client.truststore.jks");
-//        props.put("ssl.truststore.password", "secret");
-//        props.put("ssl.keystore.type", "PKCS12");
-//        props.put("ssl.keystore.location", "client.keystore.p12");
-//        props.put("ssl.keystore.password", "secret");
-//        props.put("ssl.key.password", "secret");
-//        props.put("group.id", "test-flink-input-group");
-        props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-        props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        BuildPipeline(environment, props,
+                params.get("input-topic", "test-flink-input"),
+                params.get("output-topic", "test-flink-output"));
 
-        StreamExecutionEnvironment environment = StreamExecutionEnvironment.getExecutionEnvironment();
+        environment.execute("FlinkExample");
+    }
+
+    public static void BuildPipeline(StreamExecutionEnvironment environment, Properties props,
+                                     String inputTopic, String outputTopic) {
+        BuildPipeline(environment, props, inputTopic, outputTopic, new SimpleStringSchema());
+    }
 
-        //FlinkKafkaConsumer<String> consumer = new FlinkKafkaConsumer<>("test-flink-input", new SimpleStringSchema(), props);
-        //DataStream<String> stringInputStream = environment.addSource(consumer);
+    public static void BuildPipeline(StreamExecutionEnvironment environment, Properties props,
+                                     String inputTopic, String outputTopic,
+                                     DeserializationSchema<String> inputSchema) {
 
-        DataStream<String> stringInputStream = environment.socketTextStream("localhost", 9999);
+        FlinkKafkaConsumer<String> consumer = new FlinkKafkaConsumer<>(inputTopic, inputSchema, props);
+        DataStream<String> stringInputStream = environment.addSource(consumer).uid("kafka-source");
 
+        FlinkKafkaProducer<String> producer = new FlinkKafkaProducer<>(
+                outputTopic,
+                new StringRecordSchema(outputTopic),
+                props,
+                FlinkKafkaProducer.Semantic.EXACTLY_ONCE);
 
-        FlinkKafkaProducer<String> producer = new FlinkKafkaProducer<>("test-flink-output", new SimpleStringSchema(), props);
-        stringInputStream.map(new WordsCapitalizer()).addSink(producer);
-        environment.execute("FlinkExample");
+        stringInputStream.map(new WordsCapitalizer()).uid("capitalizer")
+                .addSink(producer).uid("kafka-sink");
+    }
 
+    /**
+     * Client properties with the Java client key names, the python style names (sasl_mechanism, ssl_cafile)
+     * used before are ignored by the Java client.
+     */
+    public static Properties KafkaProperties(ParameterTool params) {
+        Properties props = new Properties();
+        props.put("bootstrap.servers", params.get("bootstrap.servers", "kafka-2841cbd0-kth-3cbd.aivencloud.com:16173"));
+
+        String securityProtocol = params.get("security.protocol", "SASL_SSL");
+        props.put("security.protocol", securityProtocol);
+        if (!securityProtocol.equals("PLAINTEXT")) {
+            props.put("sasl.mechanism", "PLAIN");
+            props.put("sasl.jaas.config", String.format(
+                    "org.apache.kafka.common.security.plain.PlainLoginModule required username=\"%s\" password=\"%s\";",
+                    params.get("username", "avnadmin"),
+                    params.get("password", "cjynhlerx4rbumtw")));
+
+            //kafka-clients 2.4 reads no PEM trust stores (that needs 2.7), import src/main/resources/ca.pem first:
+            //keytool -importcert -file src/main/resources/ca.pem -keystore truststore.jks
+            props.put("ssl.truststore.location", params.getRequired("truststore"));
+            props.put("ssl.truststore.type", params.get("truststore.type", "JKS"));
+            if (params.has("truststore.password")) {
+                props.put("ssl.truststore.password", params.get("truststore.password"));
+            }
+        }
+
+        //consumer, offsets are committed with the checkpoints and only committed transactions are read
+        props.put("group.id", params.get("group.id", "test-flink-input-group"));
+        props.put("isolation.level", "read_committed");
+
+        //producer batching
+        props.put("linger.ms", params.get("linger.ms", "5"));
+        props.put("batch.size", params.get("batch.size", "65536"));
+        props.put("compression.type", params.get("compression.type", "lz4"));
+        props.put("transaction.timeout.ms", params.get("transaction.timeout.ms", TRANSACTION_TIMEOUT_MS));
+
+        return props;
     }
-}
 
+    /**
+     * Writes the UTF-8 bytes of the string as record value without a key.
+     */
+    static class StringRecordSchema implements KafkaSerializationSchema<String> {
+
+        private final String topic;
+
+        StringRecordSchema(String topic) {
+            this.topic = topic;
+        }
 
-class WordsCapitalizer implements MapFunction<String, String> {
-    public String map(String s) {
-        return s.toUpperCase();
+        @Override
+        public ProducerRecord<byte[], byte[]> serialize(String element, @Nullable Long timestamp) {
+            return new ProducerRecord<>(topic, null, timestamp, null, element.getBytes(StandardCharsets.UTF_8));
+        }
     }
 }
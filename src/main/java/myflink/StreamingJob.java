@@ -18,6 +18,20 @@
 
 package myflink;
 
+import myflink.metrics.CheckpointStatsReporter;
+import myflink.operators.ArgExtremum;
+import myflink.operators.DictionaryDecoder;
+import myflink.operators.DictionaryEncoder;
+import myflink.operators.OffHeapSumOperator;
+import myflink.operators.RunningStatistics;
+import myflink.operators.UpsertCompactionOperator;
+import myflink.operators.WebsiteWindowMetrics;
+import myflink.sinks.BlackholeSink;
+import myflink.sinks.RollingFileSink;
+import myflink.sources.SyntheticWordSource;
+import myflink.util.PointLookupRocksDBOptionsFactory;
+import myflink.util.StateTtlProfile;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.api.common.functions.*;
 import org.apache.flink.api.common.state.*;
 import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
@@ -25,12 +39,15 @@ import org.apache.flink.api.common.typeinfo.PrimitiveArrayTypeInfo;
 import org.apache.flink.api.common.typeinfo.TypeHint;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple4;
 import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.streaming.api.TimeCharacteristic;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.DataStreamSource;
+import org.apache.flink.streaming.api.datastream.KeyedStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.CheckpointConfig;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
@@ -40,6 +57,7 @@ import org.apache.flink.streaming.api.functions.source.SourceFunction;
 import org.apache.flink.streaming.api.windowing.assigners.GlobalWindows;
 import org.apache.flink.streaming.api.windowing.assigners.ProcessingTimeSessionWindows;
 import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.streaming.api.windowing.triggers.CountTrigger;
 import org.apache.flink.util.Collector;
@@ -47,7 +65,6 @@ import org.apache.flink.util.FlinkRuntimeException;
 
 import java.io.File;
 import java.util.*;
-import java.util.stream.Stream;
 
 
 /**
@@ -92,26 +109,24 @@ public class StreamingJob {
         final ParameterTool params = ParameterTool.fromArgs(args);
 
         //env.setStateBackend(new Rocks)
-        Configuration config = new Configuration();
-        config.setString("state.backend", "filesystem");
-        //config.setString("state.backend", "rocksdb");
-        config.setString("state.backend", "ndb");
-        config.setString("state.backend.ndb.connectionstring", "localhost");
-        config.setString("state.backend.ndb.dbname", "flinkndb");
-        config.setString("state.backend.ndb.truncatetableonstart", "false");
+        Configuration config = CreateConfiguration(params);
 
-        config.setString("state.savepoints.dir", "file:///tmp/flinksavepoints");
-        config.setString("state.checkpoints.dir", "file:///tmp/flinkcheckpoints");
+        //local recovery, keep a secondary copy of the latest snapshot of every subtask on local disk
+        if (params.getBoolean("lr", false)) {
+            EnableLocalRecovery(config, params.get("lrdir", "/tmp/flinklocalrecovery"));
+        }
 
-        //state-Backend
-        if (params.has("sb")) {
-            config.setString("state.backend", params.get("sb"));
+        //unaligned checkpoints and buffer debloating for backpressured pipelines
+        if (params.getBoolean("uc", false)) {
+            EnableUnalignedCheckpoints(config);
+        }
+        //log duration, size and barrier alignment of every checkpoint, on by default in the unaligned mode
+        if (params.getBoolean("cstats", params.getBoolean("uc", false))) {
+            EnableCheckpointStatsLogging(config);
         }
 
         //example
-        if (params.has("e")) {
-            example = Integer.parseInt(params.get("e"));
-        }
+        example = params.getInt("e", 404);
 
 
         final StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironmentWithWebUI(config);
@@ -121,17 +136,21 @@ public class StreamingJob {
         //final StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
         //config.setBoolean(ConfigConstants.LOCAL_START_WEBSERVER, true);
 
-        example = 404;//106;
-        env.enableCheckpointing(10000);
-        env.getCheckpointConfig().enableExternalizedCheckpoints(CheckpointConfig.ExternalizedCheckpointCleanup.RETAIN_ON_CANCELLATION);
-        env.getCheckpointConfig().setMinPauseBetweenCheckpoints(10000);
+        ConfigureCheckpointing(env, 10000);
         if (params.has("p")) {
             env.setParallelism(Integer.parseInt(params.get("p")));
         } else {
             env.setParallelism(1);
         }
 
+        //object reuse, chained operators hand records over without a defensive copy
+        if (params.getBoolean("or", false)) {
+            env.getConfig().enableObjectReuse();
+        }
+
         //env.getConfig().setGlobalJobParameters(config); not working
+        //the examples read e.g. --input synthetic from the parameters
+        env.getConfig().setGlobalJobParameters(params);
 
         //Testing - Done
         //valueState  - 1,3, 4, 101-Clear, 11,12
@@ -159,6 +178,16 @@ public class StreamingJob {
 //            }
 //        });
 
+        RunExample(example, env);
+    }
+
+    public static void ConfigureCheckpointing(StreamExecutionEnvironment env, long interval) {
+        env.enableCheckpointing(interval);
+        env.getCheckpointConfig().enableExternalizedCheckpoints(CheckpointConfig.ExternalizedCheckpointCleanup.RETAIN_ON_CANCELLATION);
+        env.getCheckpointConfig().setMinPauseBetweenCheckpoints(interval);
+    }
+
+    public static void RunExample(int example, StreamExecutionEnvironment env) throws Exception {
         switch (example) {
             case 1:
                 StatefulCoFlatmap(env);
@@ -174,22 +203,31 @@ public class StreamingJob {
                 break;
             case 5:
                 UdemyCourseAssignment(env);
+                break;
             case 6:
                 WindowExample(env);
+                break;
             case 7:
                 SessionWindowExample(env);
+                break;
             case 8:
                 GlobalWindowExample(env);
+                break;
             case 9:
                 CountTriggerWindowExample(env);
+                break;
             case 10:
                 UdemyCourseAssignment2(env);
+                break;
             case 11:
                 KeyByFun(env);
                 break;
             case 12:
                 ReduceExample(env);
                 break;
+            case 13:
+                PopularDestinationDictionaryEncoded(env);
+                break;
 
 
             //region state examples starting with 1**
@@ -207,8 +245,13 @@ public class StreamingJob {
                 break;
             case 105:
                 SumByStatelessOperatorsUsingMapState(env);
+                break;
             case 106:
                 WordCountUsingMapStateUntilThree(env);
+                break;
+            case 107:
+                WordCountUsingOffHeapState(env);
+                break;
             //endregion
 
                 //region Recovery examples starting with 4**
@@ -217,32 +260,81 @@ public class StreamingJob {
                 break;
             case 402:
                 WordCountUnigramUsingValueStateCrash(env);
-                //endregion
+                break;
             case 403:
                 WordCountUsingValueStateFromLocalFile(env);
+                break;
             case 404:
                 WordCountUnigramUsingListStateCrash(env);
+                break;
+                //endregion
             default:
                 break;
         }
     }
 
+    public static Configuration CreateConfiguration(ParameterTool params) {
+        Configuration config = new Configuration();
+        //state-Backend: filesystem, rocksdb or ndb
+        config.setString("state.backend", params.get("sb", "ndb"));
+        config.setString("state.backend.ndb.connectionstring", "localhost");
+        config.setString("state.backend.ndb.dbname", "flinkndb");
+        config.setString("state.backend.ndb.truncatetableonstart", "false");
+
+        config.setString("state.savepoints.dir", "file:///tmp/flinksavepoints");
+        config.setString("state.checkpoints.dir", "file:///tmp/flinkcheckpoints");
+
+        //incremental RocksDB checkpoints, with local recovery a restore also reuses the local sst files
+        config.setBoolean("state.backend.incremental", params.getBoolean("incremental", false));
+
+        //RocksDB options for point lookups of small values, see PointLookupRocksDBOptionsFactory
+        if (params.get("rocksdb.profile", "default").equals("pointlookup")) {
+            PointLookupRocksDBOptionsFactory.Configure(config);
+            config.setString(PointLookupRocksDBOptionsFactory.STATISTICS.key(),
+                    params.get("rocksdb.statistics", "false"));
+        }
+        return config;
+    }
+
+    /**
+     * Task-local recovery: the task managers keep a copy of their latest snapshot in localDir and restore from it
+     * first, the checkpoint in state.checkpoints.dir is only fetched when the local copy is missing.
+     */
+    public static void EnableLocalRecovery(Configuration config, String localDir) {
+        config.setBoolean("state.backend.local-recovery", true);
+        config.setString("taskmanager.state.local.root-dirs", localDir);
+    }
+
+    /**
+     * Barriers overtake the in-flight buffers instead of waiting behind them, and the task managers size the
+     * in-flight buffers to about one second of throughput, so checkpoints don't time out under backpressure.
+     */
+    public static void EnableUnalignedCheckpoints(Configuration config) {
+        config.setBoolean("execution.checkpointing.unaligned", true);
+        config.setBoolean("taskmanager.network.memory.buffer-debloat.enabled", true);
+    }
+
+    public static void EnableCheckpointStatsLogging(Configuration config) {
+        config.setString("metrics.reporter.checkpointstats.class", CheckpointStatsReporter.class.getName());
+        config.setString("metrics.reporter.checkpointstats.interval", "1 SECONDS");
+    }
+
     private static void WordCountExample(StreamExecutionEnvironment env) throws Exception {
 
         //open socket with nc -l 9999 before running the program
-        DataStream<String> data = env.socketTextStream("localhost", 9999).uid("SocketTextStream-id");
+        DataStream<String> data = ReadSocketOrSynthetic(env).uid("SocketTextStream-id");
 
-        DataStream<Tuple2<String, Integer>> count =
+        KeyedStream<Tuple2<String, Integer>, Tuple> words =
                 data.filter(s -> s.startsWith("n"))
-                        .map(new MapFunction<String, Tuple2<String, Integer>>() {
-                            @Override
-                            public Tuple2<String, Integer> map(String s) throws Exception {
-                                return new Tuple2<>(s, 1);
-                            }
-                        }).uid("Filter-Map-id").keyBy(0) //similar to group in batch processing
-                        .sum(1).uid("KeyBy-sum-id");
+                        .map(new WordToPair()).uid("Filter-Map-id").keyBy(0); //similar to group in batch processing
 
-        count.print();
+        //the state of sum() has no ttl, with --ttl the sum is kept in a ValueState with the ttl instead
+        StateTtlProfile ttl = StateTtlProfile.fromParameters(Params(env));
+        DataStream<Tuple2<String, Integer>> count = ttl.isEnabled()
+                ? words.process(new TtlSum(ttl)).uid("KeyBy-ttl-sum-id")
+                : words.sum(1).uid("KeyBy-sum-id");
+
+        Sink(CompactIfRequested(count, pair -> pair.f0, env), env);
 
         env.execute("Word count example execution");
     }
@@ -259,12 +351,7 @@ public class StreamingJob {
 
         DataStream<Tuple2<String, Integer>> count =
                 data
-                        .map(new MapFunction<String, Tuple2<String, Integer>>() {
-                            @Override
-                            public Tuple2<String, Integer> map(String s) throws Exception {
-                                return new Tuple2<>(s, 1);
-                            }
-                        })
+                        .map(new WordToPair())
                         .keyBy(0) //similar to group in batch processing
                         .sum(1);
 
@@ -356,10 +443,7 @@ public class StreamingJob {
     }
 
     private static void ReduceExample(StreamExecutionEnvironment env) throws Exception {
-        File file = new File("src/main/resources/productProfit.txt");
-        String absolutePath = file.getAbsolutePath();
-
-        DataStream<String> data = env.readTextFile(absolutePath);
+        DataStream<String> data = ReadTextFile(env, Params(env).get("products", "src/main/resources/productProfit.txt"));
 
         //Map into tuple for each column
         DataStream<Tuple4<String, String, Integer, Integer>> mapped =
@@ -374,6 +458,18 @@ public class StreamingJob {
                             }
                         });
 
+        //--stats true: count, mean, min and max per product in one keyed state record, emitted after every
+        //--emitevery records or every --emitinterval milliseconds instead of once per record
+        ParameterTool params = Params(env);
+        if (params.getBoolean("stats", false)) {
+            mapped.keyBy(product -> product.f1)
+                    .process(new RunningStatistics<Tuple4<String, String, Integer, Integer>>(product -> product.f2,
+                            params.getLong("emitevery", 1000), params.getLong("emitinterval", 1000)))
+                    .print();
+            env.execute("Reduce Example");
+            return;
+        }
+
         //Group by product ID
         DataStream<Tuple4<String, String, Integer, Integer>> reduced =
                 mapped.keyBy(1).reduce((ReduceFunction<Tuple4<String, String, Integer, Integer>>) (current, pre)
@@ -565,10 +661,20 @@ public class StreamingJob {
 		*
 		*  */
 
-        File file = new File("src/main/resources/cab-flink.txt");
-        String absolutePath = file.getAbsolutePath();
-
-        DataStream<String> data = env.readTextFile(absolutePath);
+        DataStream<String> data = ReadTextFile(env, Params(env).get("cabs", "src/main/resources/cab-flink.txt"));
+
+        //--projection true parses and shuffles only the destination
+        if (Params(env).getBoolean("projection", false)) {
+            data.map(new CabColumnProjection(6))
+                    .filter(drop -> drop.f0 != null)
+                    .keyBy(drop -> drop.f0)
+                    .reduce((current, pre) -> Tuple2.of(current.f0, current.f1 + pre.f1))
+                    .keyBy(drop -> drop.f0)
+                    .max(1)
+                    .print();
+            env.execute("Udemy example");
+            return;
+        }
 
         DataStream<CabRide> mapped =
                 data.map((MapFunction<String, CabRide>) s -> CabRide.fromString(s));
@@ -662,88 +768,55 @@ public class StreamingJob {
                         .filter(wt -> wt.UserCountry.equals("BR"));
 
 
-        //1.total number of clicks on every website in separate file
-/*        mapped.map((MapFunction<WebTraffic, Tuple2<String, Integer>>) webTraffic -> new Tuple2<>(webTraffic.WebSite, 1))
-                .keyBy(0)
-                .window(TumblingProcessingTimeWindows.of(Time.milliseconds(1500)))
-                .sum(1);
-                //.print();
-
-/*
-        //DataStream<Tuple2<String, Integer>> a =
-        mapped.keyBy(wt -> wt.WebSite)
-                .sum("TimeSpent")
-                .map(new MapFunction<WebTraffic, Tuple2<String, Integer>>() {
-                    @Override
-                    public Tuple2<String, Integer> map(WebTraffic webTraffic) throws Exception {
-                        return new Tuple2<>(webTraffic.WebSite, webTraffic.TimeSpent);
-                    }
-                })
-                .print();*/
-
-        //2.  the website with maximum number of clicks in separate file
-       /* mapped
-                .map(new MapFunction<WebTraffic, Tuple2<String, Integer>>() {
-                    @Override
-                    public Tuple2<String, Integer> map(WebTraffic webTraffic) throws Exception {
-                        return new Tuple2<>(webTraffic.WebSite, 1);
-                    }
-                })
-                .keyBy(0)
-                .window(TumblingProcessingTimeWindows.of(Time.milliseconds(1500)))
-                .sum(1)
-                .keyBy(0)
-                .window(TumblingProcessingTimeWindows.of(Time.milliseconds(1500)))
-                .maxBy(1)
-                .print();*/
+        //one keyed window computes the clicks (a.), the distinct users (second c.) and the average time (d.) per
+        //website; the most and least clicked websites (b. and first c.) are a global argmax/argmin over the clicks
+        //the clicks are stamped with the time they are read, so that the last window still fires when a bounded
+        //input ends; --window sets the window size in millis
+        ParameterTool params = Params(env);
+        long windowMillis = params.getLong("window", 10_000);
+        SingleOutputStreamOperator<Tuple2<String, Long>> clicks = WebsiteWindowMetrics.apply(
+                mapped.assignTimestampsAndWatermarks(WatermarkStrategy.<WebTraffic>forMonotonousTimestamps()
+                        .withTimestampAssigner((wt, previous) -> System.currentTimeMillis())),
+                TumblingEventTimeWindows.of(Time.milliseconds(windowMillis)));
 
+        MetricSink(clicks, "clicks", env);
+        MetricSink(ArgExtremum.windowed(clicks, t -> t.f1, true, true, 0), "maxsite", env);
+        MetricSink(ArgExtremum.windowed(clicks, t -> t.f1, false, true, 0), "minsite", env);
+        MetricSink(clicks.getSideOutput(WebsiteWindowMetrics.DISTINCT_USERS), "users", env);
+        MetricSink(clicks.getSideOutput(WebsiteWindowMetrics.AVERAGE_TIME_SPENT), "timespent", env);
 
-        //c.) Calculate number of distinct users on every website in separate file.
-        mapped
-                .keyBy(0)
-                .flatMap(new RichFlatMapFunction<WebTraffic, Tuple2<String, Integer>>() {
-                    private ListState<String> userIdState;
-
-                    @Override
-                    public void open(Configuration parameters) throws Exception {
-                        userIdState = getRuntimeContext().getListState(
-                                new ListStateDescriptor<String>("userIdState", BasicTypeInfo.STRING_TYPE_INFO)
-                        );
-                    }
-
-                    @Override
-                    public void flatMap(WebTraffic webTraffic, Collector<Tuple2<String, Integer>> collector) throws Exception {
+        env.execute("Udemy example2");
+    }
 
-                        //whatever not going to use
-                        userIdState.add(webTraffic.Id);
-                    }
-                }).print();
-
-        // d.) Calculate the average time spent on website by users.
-//        mapped
-//                .map(new MapFunction<WebTraffic, Tuple3<String, Integer, Integer>>() {
-//                    @Override
-//                    public Tuple3<String, Integer, Integer> map(WebTraffic webTraffic) throws Exception {
-//                        return new Tuple3<>(webTraffic.WebSite, webTraffic.TimeSpent,1);
-//                    }
-//                })
-//                .keyBy(0)
-//                .reduce(new ReduceFunction<Tuple3<String, Integer, Integer>>() {
-//                    @Override
-//                    public Tuple3<String, Integer, Integer> reduce(Tuple3<String, Integer, Integer> current, Tuple3<String, Integer, Integer> pre) throws Exception {
-//                        return new Tuple3<>(pre.f0, pre.f1+current.f1, pre.f2+current.f2);
-//                    }
-//                })
-//                .map(new MapFunction<Tuple3<String, Integer, Integer>, Tuple2<String, Double>>() {
-//                         @Override
-//                         public Tuple2<String, Double> map(Tuple3<String, Integer, Integer> val) throws Exception {
-//                             return new Tuple2<>(val.f0, val.f1*1.0/ val.f2);
-//                         }
-//                     })
-//                .print();
+    /**
+     * Popular destination of UdemyCourseAssignment with the drop location dictionary encoded: the counts are keyed
+     * and kept by int id, only the printed result carries the location string again.
+     */
+    private static void PopularDestinationDictionaryEncoded(StreamExecutionEnvironment env) throws Exception {
+        DataStream<CabRide> rides = ReadTextFile(env, "src/main/resources/cab-flink.txt")
+                .map((MapFunction<String, CabRide>) s -> CabRide.fromString(s))
+                .filter(ride -> ride.DropLocation != null);
+
+        //only the drop location crosses the network to the encoder, everything after it works on the int id
+        SingleOutputStreamOperator<Tuple2<Integer, String>> encoded = rides
+                .map(ride -> ride.DropLocation)
+                .returns(String.class)
+                .keyBy(dropLocation -> dropLocation)
+                .process(new DictionaryEncoder<>())
+                .returns(new TypeHint<Tuple2<Integer, String>>() {});
+
+        DataStream<Tuple2<Integer, Integer>> counts = encoded
+                .map(dropWithId -> Tuple2.of(dropWithId.f0, 1))
+                .returns(new TypeHint<Tuple2<Integer, Integer>>() {})
+                .keyBy(dropId -> dropId.f0)
+                .sum(1);
 
+        DictionaryDecoder.apply(counts, count -> count.f0, encoded.getSideOutput(DictionaryEncoder.NEW_ENTRIES),
+                        (count, dropLocation) -> Tuple2.of(dropLocation, count.f1),
+                        TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}))
+                .print();
 
-        env.execute("Udemy example2");
+        env.execute("Dictionary encoded popular destination");
     }
 
     public static class CabRide {
@@ -762,26 +835,72 @@ public class StreamingJob {
         public Integer PassengerCount;
 
 
+        //column bits for fromString(s, columns)
+        public static final int ID = 1;
+        public static final int NUMBER_PLATE = 1 << 1;
+        public static final int TYPE = 1 << 2;
+        public static final int DRIVER_NAME = 1 << 3;
+        public static final int ONGOING_TRIP = 1 << 4;
+        public static final int PICK_LOCATION = 1 << 5;
+        public static final int DROP_LOCATION = 1 << 6;
+        public static final int PASSENGER_COUNT = 1 << 7;
+        public static final int ALL_COLUMNS = 0xFF;
+
         public static CabRide fromString(String s) {
-            CabRide ride = new CabRide();
+            return fromString(s, ALL_COLUMNS);
+        }
 
-            String[] tokens = s.split(",");
+        /**
+         * Parses only the columns set in the columns bit mask, the other fields stay null. The line is scanned for
+         * the commas once, no array of all tokens is built and unused columns are never copied into strings.
+         */
+        public static CabRide fromString(String s, int columns) {
+            CabRide ride = new CabRide();
 
-            ride.Id = tokens[0];
-            ride.NumberPlate = tokens[1];
-            ride.Type = tokens[2];
-            ride.DriverName = tokens[3];
-            ride.OngoingTrip = tokens[4];
-            ride.PickLocation = tokens[5];
-            ride.DropLocation = tokens[6].equals("'null'") ? null : tokens[6];
-            ride.PassengerCount = tokens[7].equals("'null'") ? 0 : Integer.parseInt(tokens[7]);
+            int start = 0;
+            for (int column = 0; column < 8 && (columns >>> column) != 0; column++) {
+                int end = s.indexOf(',', start);
+                if (end < 0) {
+                    end = s.length();
+                }
+                if ((columns & (1 << column)) != 0) {
+                    String token = s.substring(start, end);
+                    switch (column) {
+                        case 0: ride.Id = token; break;
+                        case 1: ride.NumberPlate = token; break;
+                        case 2: ride.Type = token; break;
+                        case 3: ride.DriverName = token; break;
+                        case 4: ride.OngoingTrip = token; break;
+                        case 5: ride.PickLocation = token; break;
+                        case 6: ride.DropLocation = token.equals("'null'") ? null : token; break;
+                        case 7: ride.PassengerCount = token.equals("'null'") ? 0 : Integer.parseInt(token); break;
+                    }
+                }
+                start = end + 1;
+            }
 
             return ride;
         }
 
+        /**
+         * The given column (0 based) of a cab ride line without parsing the others, null for 'null'.
+         */
+        public static String column(String s, int column) {
+            int start = 0;
+            for (int i = 0; i < column; i++) {
+                start = s.indexOf(',', start) + 1;
+                if (start == 0) {
+                    return null;
+                }
+            }
+            int end = s.indexOf(',', start);
+            String token = s.substring(start, end < 0 ? s.length() : end);
+            return token.equals("'null'") ? null : token;
+        }
+
         @Override
         public int hashCode() {
-            return super.hashCode() + this.Id.hashCode() + this.NumberPlate.hashCode();
+            return super.hashCode() + Objects.hashCode(this.Id) + Objects.hashCode(this.NumberPlate);
         }
 
         @Override
@@ -1196,7 +1315,8 @@ public class StreamingJob {
     private static void WordCountUsingMapStateUntilThree(StreamExecutionEnvironment env) throws Exception {
 
         //open socket with nc -l 9999 before running the program
-        DataStream<String> data = env.socketTextStream("localhost", 9999);
+        DataStream<String> data = ReadSocketOrSynthetic(env);
+        final StateTtlProfile ttl = StateTtlProfile.fromParameters(Params(env));
 
         DataStream<Tuple2<String, Integer>> count =
                 data.keyBy(new KeySelector<String, String>() {
@@ -1251,32 +1371,53 @@ public class StreamingJob {
                             public void open(Configuration parameters) throws Exception {
 
                                 countValueState = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("countValueState", BasicTypeInfo.INT_TYPE_INFO));
+                                        ttl.apply(new ValueStateDescriptor<>("countValueState", BasicTypeInfo.INT_TYPE_INFO)));
 
                                 countValueState1 = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("countValueState1", BasicTypeInfo.INT_TYPE_INFO));
+                                        ttl.apply(new ValueStateDescriptor<>("countValueState1", BasicTypeInfo.INT_TYPE_INFO)));
                                 countValueState2 = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("countValueState2", BasicTypeInfo.INT_TYPE_INFO));
+                                        ttl.apply(new ValueStateDescriptor<>("countValueState2", BasicTypeInfo.INT_TYPE_INFO)));
 
                                 sumMapState = getRuntimeContext().getMapState(
-                                        new MapStateDescriptor<>("sumMapState",
+                                        ttl.apply(new MapStateDescriptor<>("sumMapState",
                                                 BasicTypeInfo.STRING_TYPE_INFO,
-                                                BasicTypeInfo.INT_TYPE_INFO));
+                                                BasicTypeInfo.INT_TYPE_INFO)));
 
                                 lotOfValuesState = getRuntimeContext().getListState(
-                                        new ListStateDescriptor<Integer>("lotOfValuesState",
-                                                BasicTypeInfo.INT_TYPE_INFO));
+                                        ttl.apply(new ListStateDescriptor<Integer>("lotOfValuesState",
+                                                BasicTypeInfo.INT_TYPE_INFO)));
 
                             }
                         });
 
         //.sum(1).uid("KeyBy-sum-id");
 
-        count.print();
+        Sink(count, env);
 
         env.execute("Word count example execution");
 
     }
+
+    /**
+     * Word count with the counts in an {@link OffHeapSumOperator} rather than in the keyed state backend, which
+     * keeps tens of millions of keys off the heap of the filesystem backend. --offheapmb (default 512) is the
+     * off-heap budget of every subtask, --offheappage (default 32768) the page size in bytes.
+     */
+    private static void WordCountUsingOffHeapState(StreamExecutionEnvironment env) throws Exception {
+        ParameterTool params = Params(env);
+
+        DataStream<Tuple2<String, Integer>> count = OffHeapSumOperator.sum(
+                ReadSocketOrSynthetic(env)
+                        .flatMap(new LineSplitter())
+                        .keyBy(t -> t.f0),
+                params.getInt("offheappage", 32 * 1024),
+                params.getLong("offheapmb", 512) * 1024 * 1024)
+                .uid("KeyBy-offheap-sum-id");
+
+        Sink(count, env);
+
+        env.execute("Word count off-heap state example execution");
+    }
     //endregion
 
     //region failure or recovery test
@@ -1284,21 +1425,13 @@ public class StreamingJob {
     private static void WordCountUsingValueStateCrash(StreamExecutionEnvironment env) throws Exception {
 
         //open socket with nc -l 9999 before running the program
-        DataStream<String> data = env.socketTextStream("localhost", 9999);
+        DataStream<String> data = ReadSocketOrSynthetic(env);
+        final StateTtlProfile ttl = StateTtlProfile.fromParameters(Params(env));
 
         DataStream<Tuple2<String, Integer>> count =
                 data
                         //split the line
-                        .flatMap(new FlatMapFunction<String, Tuple2<String, Integer>>() {
-                            @Override
-                            public void flatMap(String line, Collector<Tuple2<String, Integer>> collector) throws Exception {
-                                for (String word : line.split(" ")) {
-                                    //if (word.equals("INFO") || word.equals("DEBUG")) {
-                                    collector.collect(new Tuple2<>(word.toLowerCase(), 1));
-                                    //}
-                                }
-                            }
-                        })
+                        .flatMap(new LineSplitter())
                         //make a keyed stream based on the keyword
                         .keyBy(0)
 
@@ -1327,16 +1460,16 @@ public class StreamingJob {
                             public void open(Configuration parameters) throws Exception {
 
                                 sumValueState = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("sumValueState", BasicTypeInfo.INT_TYPE_INFO));
+                                        ttl.apply(new ValueStateDescriptor<>("sumValueState", BasicTypeInfo.INT_TYPE_INFO)));
                                 countValueState = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("countValueState", BasicTypeInfo.INT_TYPE_INFO));
+                                        ttl.apply(new ValueStateDescriptor<>("countValueState", BasicTypeInfo.INT_TYPE_INFO)));
 
                             }
                         });
 
         //.sum(1).uid("KeyBy-sum-id");
 
-        count.print();
+        Sink(count, env);
 
         env.execute("Word count example execution");
 
@@ -1346,17 +1479,22 @@ public class StreamingJob {
     private static void WordCountUnigramUsingValueStateCrash(StreamExecutionEnvironment env) throws Exception {
 
         //open socket with nc -l 9999 before running the program
-        DataStream<String> data = env.socketTextStream("localhost", 9999);
+        DataStream<String> data = ReadSocketOrSynthetic(env);
+        final StateTtlProfile ttl = StateTtlProfile.fromParameters(Params(env));
 
         DataStream<Tuple2<String, Integer>> count =
                 data
                         //split the line
                         .flatMap(new FlatMapFunction<String, Tuple2<String, Integer>>() {
+                            private final Tuple2<String, Integer> reuse = new Tuple2<>();
+
                             @Override
                             public void flatMap(String line, Collector<Tuple2<String, Integer>> collector) throws Exception {
                                 for (String word : line.split(" ")) {
                                     //if (word.startsWith("a") || word.startsWith("b")|| word.startsWith("c")){
-                                    collector.collect(new Tuple2<>(word.toLowerCase(), 1));
+                                    reuse.f0 = word.toLowerCase();
+                                    reuse.f1 = 1;
+                                    collector.collect(reuse);
                                     //}
                                     if (word.equals("flinkNDB")) {
                                         throw new FlinkRuntimeException("Ahah");
@@ -1397,7 +1535,7 @@ public class StreamingJob {
                             public void open(Configuration parameters) throws Exception {
 
                                 countValueState = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("countValueState", MyInteger.class));
+                                        ttl.apply(new ValueStateDescriptor<>("countValueState", MyInteger.class)));
 //                                mapSate = getRuntimeContext().getMapState(
 //                                        new MapStateDescriptor<>("mapState", BasicTypeInfo.STRING_TYPE_INFO,
 //                                                PrimitiveArrayTypeInfo.CHAR_PRIMITIVE_ARRAY_TYPE_INFO)
@@ -1408,7 +1546,7 @@ public class StreamingJob {
 
         //.sum(1).uid("KeyBy-sum-id");
 
-        count.print();
+        Sink(count, env);
 
         env.execute("Word count example execution");
 
@@ -1422,15 +1560,21 @@ public class StreamingJob {
 //        String absolutePath = file.getAbsolutePath();
 //        DataStream<String> data = env.readTextFile(absolutePath);
 
-        DataStream<String> data = env.socketTextStream("localhost", 9999).uid("SocketTextStream-id");
+        DataStream<String> data = ReadSocketOrSynthetic(env).uid("SocketTextStream-id");
 
 
         DataStream<Tuple2<String, Integer>> wordCount =
                 data
                         .flatMap(new FlatMapFunction<String, Tuple2<String, Integer>>() {
+                            private final Tuple2<String, Integer> reuse = new Tuple2<>();
+
                             @Override
                             public void flatMap(String s, Collector<Tuple2<String, Integer>> collector) throws Exception {
-                                Stream.of(s.split(" ")).forEach(w -> collector.collect(new Tuple2<>(w, 1)));
+                                for (String w : s.split(" ")) {
+                                    reuse.f0 = w;
+                                    reuse.f1 = 1;
+                                    collector.collect(reuse);
+                                }
                             }
                         })
                         .keyBy(0)
@@ -1441,7 +1585,7 @@ public class StreamingJob {
                             return true;
                         });
 
-        wordCount.countWindowAll(3).max(1).print();
+        Sink(wordCount.countWindowAll(3).max(1), env);
 
 
 //        //1.) Popular destination.  | Where more number of people reach.
@@ -1482,7 +1626,8 @@ public class StreamingJob {
         //test x y z
 
         //open socket with nc -l 9999 before running the program
-        DataStream<String> data = env.socketTextStream("localhost", 9999);
+        DataStream<String> data = ReadSocketOrSynthetic(env);
+        final StateTtlProfile ttl = StateTtlProfile.fromParameters(Params(env));
 
         DataStream<Tuple2<String, Long>> count =
                 data
@@ -1514,9 +1659,9 @@ public class StreamingJob {
                             public void open(Configuration parameters) throws Exception {
 
                                 countValueState = getRuntimeContext().getState(
-                                        new ValueStateDescriptor<>("countValueState", BasicTypeInfo.LONG_TYPE_INFO));
+                                        ttl.apply(new ValueStateDescriptor<>("countValueState", BasicTypeInfo.LONG_TYPE_INFO)));
                                 coutnListSate = getRuntimeContext().getListState(
-                                        new ListStateDescriptor<String>("countListState", BasicTypeInfo.STRING_TYPE_INFO));
+                                        ttl.apply(new ListStateDescriptor<String>("countListState", BasicTypeInfo.STRING_TYPE_INFO)));
                             }
 
                             @Override
@@ -1534,7 +1679,7 @@ public class StreamingJob {
 
         //.sum(1).uid("KeyBy-sum-id");
 
-        count.print();
+        Sink(count, env);
 
         env.execute("List count example execution");
 
@@ -1545,10 +1690,17 @@ public class StreamingJob {
 
     private static void KeyByFun(StreamExecutionEnvironment env) throws Exception {
 
-        File file = new File("src/main/resources/cab-flink.txt");
-        String absolutePath = file.getAbsolutePath();
+        DataStream<String> data = ReadTextFile(env, Params(env).get("cabs", "src/main/resources/cab-flink.txt"));
 
-        DataStream<String> data = env.readTextFile(absolutePath);
+        //--projection true parses and shuffles only the cab id
+        if (Params(env).getBoolean("projection", false)) {
+            data.map(new CabColumnProjection(0))
+                    .keyBy(id -> id.f0.hashCode() % 8)
+                    .sum(1)
+                    .print();
+            env.execute("Udemy example");
+            return;
+        }
 
         DataStream<CabRide> mapped =
                 data.map((MapFunction<String, CabRide>) s -> CabRide.fromString(s));
@@ -1606,6 +1758,155 @@ public class StreamingJob {
         return env.readTextFile(absolutePath);
     }
 
+    /**
+     * Maps a cab ride line to (column, 1) with {@link CabRide#column}, the minimal record for counting by one
+     * column. The output tuple is reused like in {@link WordToPair}.
+     */
+    public static class CabColumnProjection implements MapFunction<String, Tuple2<String, Integer>> {
+        private final int column;
+        private final Tuple2<String, Integer> reuse = new Tuple2<>();
+
+        public CabColumnProjection(int column) {
+            this.column = column;
+        }
+
+        @Override
+        public Tuple2<String, Integer> map(String s) throws Exception {
+            reuse.f0 = CabRide.column(s, column);
+            reuse.f1 = 1;
+            return reuse;
+        }
+    }
+
+    /**
+     * Running sum of (word, n) pairs like keyBy(0).sum(1), with the sum in a ValueState with the ttl of the
+     * profile, so words not seen for the ttl start from 0 again.
+     */
+    public static class TtlSum extends KeyedProcessFunction<Tuple, Tuple2<String, Integer>, Tuple2<String, Integer>> {
+        private final StateTtlProfile ttl;
+        private transient ValueState<Integer> sum;
+
+        public TtlSum(StateTtlProfile ttl) {
+            this.ttl = ttl;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            sum = getRuntimeContext().getState(
+                    ttl.apply(new ValueStateDescriptor<>("ttlSum", BasicTypeInfo.INT_TYPE_INFO)));
+        }
+
+        @Override
+        public void processElement(Tuple2<String, Integer> pair, Context ctx, Collector<Tuple2<String, Integer>> out)
+                throws Exception {
+            Integer current = sum.value();
+            int updated = (current == null ? 0 : current) + pair.f1;
+            sum.update(updated);
+            out.collect(new Tuple2<>(pair.f0, updated));
+        }
+    }
+
+    /**
+     * Maps a word to (word, 1). The output tuple is reused for every record, which is safe because a keyBy follows
+     * and the record is serialized before the next one is mapped.
+     */
+    public static class WordToPair implements MapFunction<String, Tuple2<String, Integer>> {
+        private final Tuple2<String, Integer> reuse = new Tuple2<>();
+
+        @Override
+        public Tuple2<String, Integer> map(String s) throws Exception {
+            reuse.f0 = s;
+            reuse.f1 = 1;
+            return reuse;
+        }
+    }
+
+    /**
+     * Splits a line into (lower case word, 1) pairs, reusing the output tuple like {@link WordToPair}.
+     */
+    public static class LineSplitter implements FlatMapFunction<String, Tuple2<String, Integer>> {
+        private final Tuple2<String, Integer> reuse = new Tuple2<>();
+
+        @Override
+        public void flatMap(String line, Collector<Tuple2<String, Integer>> collector) throws Exception {
+            for (String word : line.split(" ")) {
+                reuse.f0 = word.toLowerCase();
+                reuse.f1 = 1;
+                collector.collect(reuse);
+            }
+        }
+    }
+
+    private static ParameterTool Params(StreamExecutionEnvironment env) {
+        return ParameterTool.fromMap(env.getConfig().getGlobalJobParameters().toMap());
+    }
+
+    /**
+     * With --compact millis the per record updates are compacted to the latest per key every millis (and at every
+     * checkpoint), at most --compactkeys keys are buffered. Only for updates that go straight to the sink as upserts,
+     * count windows and other operators downstream would see different records.
+     */
+    private static <T, K> DataStream<T> CompactIfRequested(DataStream<T> updates, KeySelector<T, K> key,
+                                                           StreamExecutionEnvironment env) {
+        ParameterTool params = Params(env);
+        if (params.getLong("compact", 0) <= 0) {
+            return updates;
+        }
+        return UpsertCompactionOperator.compact(updates, key, params.getLong("compact"),
+                params.getInt("compactkeys", 100_000));
+    }
+
+    /**
+     * Writes the metric to its own directory, --output/name with --output defaulting to /tmp/udemyAss2, as csv or
+     * with --sinkformat binary in the binary format of the metric's serializer. The parts are committed on
+     * checkpoints and at the end of the input.
+     */
+    private static <T> void MetricSink(DataStream<T> metric, String name, StreamExecutionEnvironment env) {
+        ParameterTool params = Params(env);
+        String directory = new File(params.get("output", "/tmp/udemyAss2"), name).getPath();
+        RollingFileSink<T> sink = params.get("sinkformat", "csv").equals("binary")
+                ? new RollingFileSink<>(directory,
+                        RollingFileSink.binary(metric.getType().createSerializer(env.getConfig())), ".bin")
+                : new RollingFileSink<>(directory, RollingFileSink.csv(), ".csv");
+        metric.addSink(sink).name(name + " sink");
+    }
+
+    /**
+     * Ends an example in --sink print (the default), blackhole or file. The {@link BlackholeSink} only counts the
+     * records and their latency from the source, reported to --latencyout (default /tmp/latency); file writes csv
+     * parts with the {@link RollingFileSink} to --output (default /tmp/streamingjob).
+     */
+    private static <T> void Sink(DataStream<T> result, StreamExecutionEnvironment env) {
+        ParameterTool params = Params(env);
+        switch (params.get("sink", "print")) {
+            case "print":
+                result.print();
+                break;
+            case "blackhole":
+                result.addSink(new BlackholeSink<>(params.get("latencyout", "/tmp/latency"),
+                        System.currentTimeMillis())).name("Blackhole");
+                break;
+            case "file":
+                result.addSink(new RollingFileSink<>(params.get("output", "/tmp/streamingjob"), RollingFileSink.csv(),
+                        ".csv")).name("Rolling file");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown sink " + params.get("sink"));
+        }
+    }
+
+    /**
+     * The socket stream of the examples, or the {@link SyntheticWordSource} when the job runs with
+     * --input synthetic (see {@link SyntheticWordSource#fromParameters(ParameterTool)} for its parameters).
+     */
+    private static DataStreamSource<String> ReadSocketOrSynthetic(StreamExecutionEnvironment env) {
+        ParameterTool params = Params(env);
+        if (params.get("input", "socket").equals("synthetic")) {
+            return env.addSource(SyntheticWordSource.fromParameters(params));
+        }
+        return env.socketTextStream("localhost", 9999);
+    }
+
     static class StatefulProcess extends KeyedProcessFunction<String, KeyValue, KeyValue> {
         ValueState<Integer> processedInt;
 
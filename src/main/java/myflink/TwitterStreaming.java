@@ -1,20 +1,30 @@
 package myflink;
 
+import myflink.operators.WindowedTopK;
+import myflink.sources.ReplayTweetSource;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.api.common.functions.FlatMapFunction;
 import org.apache.flink.api.common.functions.MapFunction;
 import org.apache.flink.api.java.functions.KeySelector;
 import org.apache.flink.api.java.tuple.Tuple;
 import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.core.JsonProcessingException;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.JsonNode;
 import org.apache.flink.shaded.jackson2.com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
 import org.apache.flink.streaming.api.windowing.assigners.TumblingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
 import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
 import org.apache.flink.streaming.connectors.twitter.TwitterSource;
 import org.apache.flink.util.Collector;
 
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Properties;
 
 public class TwitterStreaming {
@@ -29,9 +39,53 @@ public class TwitterStreaming {
         twitterCredentials.setProperty(TwitterSource.TOKEN, "35245669-LucieaYIvJSgOCJ52rr2PoYTritAeXpssT37IBS8X");
         twitterCredentials.setProperty(TwitterSource.TOKEN_SECRET, "T0YYlBG8WyF9vpLJFHvwkSsaGjM9KyqxWRDiS4fUPzvaS");
 
-        DataStream<String> tweetStream = env.addSource(new TwitterSource(twitterCredentials));
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        //--input replays recorded tweets (files or a directory, optionally gzip) at --speed times the recorded
+        //rate, or as fast as possible without --speed, and switches to event time by default
+        boolean eventTime = params.getBoolean("eventtime", params.has("input"));
 
-        tweetStream.flatMap(new TweetParser())
+        DataStream<String> tweetStream = params.has("input")
+                ? env.addSource(ReplayTweetSource.fromParameters(params)).name("Replayed tweets")
+                : env.addSource(new TwitterSource(twitterCredentials));
+
+        DataStream<Tweet> tweets = tweetStream.flatMap(new TweetParser());
+        if (eventTime) {
+            tweets = tweets.assignTimestampsAndWatermarks(WatermarkStrategy
+                    .<Tweet>forBoundedOutOfOrderness(Duration.ofSeconds(params.getInt("outoforderness", 5)))
+                    .withTimestampAssigner((tweet, previous) -> tweet.timestampMs));
+        }
+        WindowAssigner<Object, TimeWindow> window = eventTime
+                ? TumblingEventTimeWindows.of(Time.seconds(params.getInt("window", 10)))
+                : TumblingProcessingTimeWindows.of(Time.seconds(params.getInt("window", 10)));
+
+        //--count hashtags or users for the top --k per window, --sketch n bounds every bucket to n counters
+        switch (params.get("count", "source")) {
+            case "hashtags":
+                TopK(tweets.flatMap(new HashtagExtractor()), window, eventTime, params).print();
+                break;
+            case "users":
+                TopK(tweets.map(tweet -> tweet.screenName).returns(String.class).filter(Objects::nonNull), window, eventTime, params).print();
+                break;
+            default:
+                SourceCounts(tweets, window).print();
+                break;
+        }
+
+        env.execute("Twitter Streaming example");
+    }
+
+    public static DataStream<WindowedTopK.Result> TopK(DataStream<String> keys, WindowAssigner<Object, TimeWindow> window,
+                                                      boolean eventTime, ParameterTool params) {
+        return WindowedTopK.apply(keys, window,
+                params.getInt("k", 10),
+                params.getInt("buckets", 16),
+                params.getInt("sketch", 0),
+                eventTime,
+                params.getLong("mergedelay", 1000));
+    }
+
+    public static DataStream<Tuple2<Tweet, Integer>> SourceCounts(DataStream<Tweet> tweets, WindowAssigner<Object, TimeWindow> window) {
+        return tweets
                 .map(new MapFunction<Tweet, Tuple2<Tweet, Integer>>() {
                     @Override
                     public Tuple2<Tweet, Integer> map(Tweet tweet) throws Exception {
@@ -44,11 +98,22 @@ public class TwitterStreaming {
                         return tweetIntegerTuple2.f0.source;
                     }
                 })
-                .window(TumblingProcessingTimeWindows.of(Time.seconds(10)))
-                .sum(1)
-                .print();
+                .window(window)
+                .sum(1);
+    }
 
-        env.execute("Twitter Streaming example");
+    /**
+     * The hashtags of a tweet, lower case and without the #.
+     */
+    public static class HashtagExtractor implements FlatMapFunction<Tweet, String> {
+        @Override
+        public void flatMap(Tweet tweet, Collector<String> out) {
+            if (tweet.hashtags != null) {
+                for (String hashtag : tweet.hashtags) {
+                    out.collect(hashtag);
+                }
+            }
+        }
     }
 
 
@@ -64,23 +129,28 @@ public class TwitterStreaming {
 
     public static class Tweet {
 
+        //thread safe once configured, creating one per tweet dominated the parse time
+        private static final ObjectMapper JSON_PARSER = new ObjectMapper();
+
         private String text;
         private String userName;
         public String rawText;
         public String lang;
         public String source;
+        public String screenName;
+        public String[] hashtags;
+        public long timestampMs;
 
         Tweet() {
         }
 
         public static Tweet fromString(String s) {
 
-            ObjectMapper jsonParser = new ObjectMapper();
             Tweet tweet = new Tweet();
             tweet.rawText = s;
 
             try {
-                JsonNode node = jsonParser.readValue(s, JsonNode.class);
+                JsonNode node = JSON_PARSER.readTree(s);
                 Boolean isLang = node.has("user") && node.get("user").has("lang");// &&
                        // !node.get("user").get("lang").asText().equals("null");
 
@@ -90,6 +160,20 @@ public class TwitterStreaming {
                     tweet.text = node.get("text").asText();
                     tweet.userName = userNode.get("name").asText();
                     tweet.lang = userNode.get("lang").asText();
+                    if (userNode.has("screen_name")) {
+                        tweet.screenName = userNode.get("screen_name").asText();
+                    }
+                    if (node.has("timestamp_ms")) {
+                        tweet.timestampMs = node.get("timestamp_ms").asLong();
+                    }
+
+                    JsonNode hashtagNodes = node.path("entities").path("hashtags");
+                    if (hashtagNodes.isArray() && hashtagNodes.size() > 0) {
+                        tweet.hashtags = new String[hashtagNodes.size()];
+                        for (int i = 0; i < tweet.hashtags.length; i++) {
+                            tweet.hashtags[i] = hashtagNodes.get(i).path("text").asText().toLowerCase(Locale.ROOT);
+                        }
+                    }
 
                     if(node.has("source")){
 
@@ -0,0 +1,45 @@
+package myflink;
+
+import org.apache.flink.api.common.functions.MapFunction;
+
+import java.util.Locale;
+
+/**
+ * Upper-cases like {@code toUpperCase(Locale.ROOT)}. Input without lower case letters is returned as it is, ASCII
+ * input is converted in a reused buffer, so the only allocation per record is the resulting string.
+ */
+public class WordsCapitalizer implements MapFunction<String, String> {
+
+    private transient char[] buffer;
+
+    @Override
+    public String map(String s) {
+        int length = s.length();
+        int first = 0;
+        while (first < length) {
+            char c = s.charAt(first);
+            if ((c >= 'a' && c <= 'z') || c >= 0x80) {
+                break;
+            }
+            first++;
+        }
+        if (first == length) {
+            return s;
+        }
+
+        if (buffer == null || buffer.length < length) {
+            buffer = new char[Math.max(length, 128)];
+        }
+        s.getChars(0, length, buffer, 0);
+        for (int i = first; i < length; i++) {
+            char c = buffer[i];
+            if (c >= 'a' && c <= 'z') {
+                buffer[i] = (char) (c - ('a' - 'A'));
+            } else if (c >= 0x80) {
+                //special casing rules outside of ASCII
+                return s.toUpperCase(Locale.ROOT);
+            }
+        }
+        return new String(buffer, 0, length);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Writes rows in the 29 column layout of the EPA daily air quality files that COQueries reads: state code,
+ * county code, site, parameter ..., arithmetic mean in column 16 and the date in column 28.
+ */
+public class AirQualityGenerator {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        Generate(new File(params.get("output", "/tmp/air-quality.csv")), params.getLong("rows", 12_000_000L));
+    }
+
+    public static void Generate(File file, long rows) throws IOException {
+        SplittableRandom random = new SplittableRandom(5);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            StringBuilder row = new StringBuilder(320);
+            for (long i = 0; i < rows; i++) {
+                int state = 1 + random.nextInt(56);
+                int county = 1 + random.nextInt(200);
+                int year = 2000 + random.nextInt(21);
+                String date = year + "-" + Pad(1 + random.nextInt(12)) + "-" + Pad(1 + random.nextInt(28));
+                double mean = random.nextInt(100_000) / 1_000_000.0;
+
+                row.setLength(0);
+                row.append(state).append(',').append(county).append(",0007,44201,1,34.1,-118.1,WGS84,Ozone,")
+                        .append("8-HR RUN AVG BEGIN HOUR,Ozone 8-hour 2015,").append(date)
+                        .append(",Parts per million,None,17,71.0,").append(mean).append(',')
+                        .append(mean + 0.01).append(",9,29,087,INSTRUMENTAL,Site ").append(i % 5000)
+                        .append(",Address,State ").append(state).append(",County ").append(county)
+                        .append(",City,CBSA,").append(date).append('\n');
+                out.append(row);
+            }
+        }
+    }
+
+    private static String Pad(int n) {
+        return n < 10 ? "0" + n : Integer.toString(n);
+    }
+}
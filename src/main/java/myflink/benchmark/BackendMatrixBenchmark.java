@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.StreamingJob;
+import myflink.metrics.CheckpointStatsReporter;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs StreamingJob examples on the synthetic input against every state backend and parallelism and appends one
+ * JSON line per run to the results file, so runs of different commits can be compared.
+ *
+ * <p>Every example line holds the throughput, the duration and size of the last checkpoint and the largest barrier
+ * alignment. Unless --recovery false, one more line per backend and parallelism holds the time to the first
+ * record after a crash of the recovery word count of {@link RecoveryBenchmark}. It is not a recovery of the
+ * examples above, which do not crash.
+ *
+ * <p>Example: {@code --e 401,404 --backends filesystem,rocksdb,ndb --parallelism 1,2,4 --lines 500000
+ * --out bench-results/backend-matrix.jsonl}
+ */
+public class BackendMatrixBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+
+        String[] examples = params.get("e", "401,402,404").split(",");
+        String[] backends = params.get("backends", "filesystem,rocksdb,ndb").split(",");
+        String[] parallelisms = params.get("parallelism", "1,2,4").split(",");
+        File out = new File(params.get("out", "bench-results/backend-matrix.jsonl"));
+        String commit = params.get("commit", gitCommit());
+
+        out.getAbsoluteFile().getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(new FileWriter(out, true))) {
+            for (String example : examples) {
+                for (String backend : backends) {
+                    for (String parallelism : parallelisms) {
+                        Map<String, Object> result = new LinkedHashMap<>();
+                        result.put("commit", commit);
+                        result.put("timestamp", System.currentTimeMillis());
+                        result.put("example", Integer.parseInt(example));
+                        result.put("backend", backend);
+                        result.put("parallelism", Integer.parseInt(parallelism));
+                        try {
+                            run(Integer.parseInt(example), backend, Integer.parseInt(parallelism), params, result);
+                        } catch (Exception e) {
+                            //e.g. no NDB cluster reachable, keep the other runs going
+                            result.put("error", String.valueOf(e.getMessage()));
+                        }
+                        print(writer, result);
+                    }
+                }
+            }
+
+            if (params.getBoolean("recovery", true)) {
+                for (String backend : backends) {
+                    for (String parallelism : parallelisms) {
+                        Map<String, Object> result = new LinkedHashMap<>();
+                        result.put("commit", commit);
+                        result.put("timestamp", System.currentTimeMillis());
+                        result.put("benchmark", "recovery");
+                        result.put("backend", backend);
+                        result.put("parallelism", Integer.parseInt(parallelism));
+                        try {
+                            //the recovery job needs a rate limited source to crash after a checkpoint, so it keeps
+                            //its own defaults
+                            result.put("wordCountRecoveryMs", RecoveryBenchmark.measure(backend,
+                                    params.getBoolean("lr", false), Integer.parseInt(parallelism),
+                                    ParameterTool.fromArgs(new String[0])));
+                        } catch (Exception e) {
+                            result.put("error", String.valueOf(e.getMessage()));
+                        }
+                        print(writer, result);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void print(PrintWriter writer, Map<String, Object> result) {
+        writer.println(toJson(result));
+        writer.flush();
+        System.out.println(toJson(result));
+    }
+
+    public static void run(int example, String backend, int parallelism, ParameterTool params,
+                           Map<String, Object> result) throws Exception {
+
+        ParameterTool jobParams = params
+                .mergeWith(ParameterTool.fromMap(Collections.singletonMap("input", "synthetic")));
+
+        Configuration config = StreamingJob.CreateConfiguration(jobParams);
+        config.setString("state.backend", backend);
+        StreamingJob.EnableCheckpointStatsLogging(config);
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(parallelism, config);
+        StreamingJob.ConfigureCheckpointing(env, params.getLong("ci", 1000));
+        env.getConfig().setGlobalJobParameters(jobParams);
+
+        CheckpointStatsReporter.reset();
+        long start = System.nanoTime();
+        StreamingJob.RunExample(example, env);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long lines = jobParams.getLong("lines", 1_000_000) * parallelism;
+        Map<String, Long> checkpoint = CheckpointStatsReporter.latest();
+
+        result.put("lines", lines);
+        result.put("seconds", seconds);
+        result.put("linesPerSecond", lines / seconds);
+        result.put("checkpoints", checkpoint.getOrDefault(CheckpointStatsReporter.COMPLETED, 0L));
+        result.put("checkpointDurationMs", checkpoint.getOrDefault(CheckpointStatsReporter.DURATION, 0L));
+        result.put("checkpointSizeBytes", checkpoint.getOrDefault(CheckpointStatsReporter.SIZE, 0L));
+        result.put("maxAlignmentMs", checkpoint.getOrDefault(CheckpointStatsReporter.ALIGNMENT, 0L) / 1_000_000);
+    }
+
+    private static String toJson(Map<String, Object> values) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(entry.getKey()).append("\":");
+            Object value = entry.getValue();
+            if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else {
+                json.append('"').append(String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private static String gitCommit() {
+        try {
+            Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(git.getInputStream()))) {
+                String line = reader.readLine();
+                return line == null ? "unknown" : line.trim();
+            }
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.BatchJob;
+import myflink.BatchStreamingJob;
+import org.apache.flink.api.common.JobExecutionResult;
+import org.apache.flink.api.common.operators.base.JoinOperatorBase;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.DataSet;
+import org.apache.flink.api.java.ExecutionEnvironment;
+import org.apache.flink.api.java.io.DiscardingOutputFormat;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * The word count, join and groupBy examples on the DataSet API and on the DataStream API in batch mode, on the
+ * same generated files and with the same parallelism. The files are generated to --dir once and reused.
+ *
+ * <p>Prints one CSV line per example and API with the net runtime of the job.
+ */
+public class BatchApiBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long rows = params.getLong("rows", 20_000_000L);
+        int parallelism = params.getInt("p", Runtime.getRuntime().availableProcessors());
+        File dir = new File(params.get("dir", "/tmp/batch-api-benchmark-" + rows));
+        dir.mkdirs();
+
+        File names = new File(dir, "names.txt");
+        File persons = new File(dir, "persons.txt");
+        File locations = new File(dir, "locations.txt");
+        File driverWeeks = new File(dir, "driver-weeks.csv");
+        if (!driverWeeks.exists()) {
+            GenerateNames(names, rows, params.getInt("vocabulary", 100_000));
+            GenerateIds(persons, rows / 4, "name");
+            GenerateIds(locations, rows / 4, "location");
+            BatchGroupByBenchmark.Generate(driverWeeks, rows, 100_000, 52);
+        }
+
+        System.out.println("example,api,rows,parallelism,millis");
+        for (String example : params.get("examples", "wordcount,join,groupby").split(",")) {
+            long rowsOf = example.equals("join") ? rows / 2 : rows;
+
+            ExecutionEnvironment dataSetEnv = ExecutionEnvironment.createLocalEnvironment(new Configuration());
+            dataSetEnv.setParallelism(parallelism);
+            switch (example) {
+                case "wordcount":
+                    dataSetEnv.readTextFile(names.getAbsolutePath())
+                            .filter(s -> s.startsWith("M"))
+                            .map(s -> Tuple2.of(s, 1))
+                            .returns(TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}))
+                            .groupBy(0).sum(1)
+                            .output(new DiscardingOutputFormat<>());
+                    break;
+                case "join":
+                    DataSet<Tuple2<Integer, String>> p = IdValues(dataSetEnv, persons);
+                    DataSet<Tuple2<Integer, String>> l = IdValues(dataSetEnv, locations);
+                    p.join(l, JoinOperatorBase.JoinHint.OPTIMIZER_CHOOSES).where(0).equalTo(0)
+                            .with((a, b) -> new Tuple3<>(a.f0, a.f1, b.f1))
+                            .returns(TypeInformation.of(new TypeHint<Tuple3<Integer, String, String>>() {}))
+                            .output(new DiscardingOutputFormat<>());
+                    break;
+                case "groupby":
+                    BatchJob.DriverWeekAverages(dataSetEnv.readTextFile(driverWeeks.getAbsolutePath()))
+                            .output(new DiscardingOutputFormat<>());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown example " + example);
+            }
+            print(example, "dataset", rowsOf, parallelism, dataSetEnv.execute(example));
+
+            StreamExecutionEnvironment streamEnv = BatchStreamingJob.CreateBatchEnvironment(
+                    ParameterTool.fromArgs(new String[]{"--p", String.valueOf(parallelism)}));
+            switch (example) {
+                case "wordcount":
+                    BatchStreamingJob.WordCount(streamEnv.readTextFile(names.getAbsolutePath()))
+                            .addSink(new DiscardingSink<>());
+                    break;
+                case "join":
+                    BatchStreamingJob.Join(streamEnv.readTextFile(persons.getAbsolutePath()),
+                                    streamEnv.readTextFile(locations.getAbsolutePath()))
+                            .addSink(new DiscardingSink<>());
+                    break;
+                case "groupby":
+                    BatchStreamingJob.DriverWeekAverages(streamEnv.readTextFile(driverWeeks.getAbsolutePath()))
+                            .addSink(new DiscardingSink<>());
+                    break;
+            }
+            print(example, "datastream-batch", rowsOf, parallelism, streamEnv.execute(example));
+        }
+    }
+
+    private static void print(String example, String api, long rows, int parallelism, JobExecutionResult result) {
+        System.out.printf("%s,%s,%d,%d,%d%n", example, api, rows, parallelism, result.getNetRuntime());
+    }
+
+    private static DataSet<Tuple2<Integer, String>> IdValues(ExecutionEnvironment env, File file) {
+        return env.readTextFile(file.getAbsolutePath())
+                .map(s -> {
+                    String[] words = s.split(",");
+                    return new Tuple2<>(Integer.parseInt(words[0]), words[1]);
+                })
+                .returns(TypeInformation.of(new TypeHint<Tuple2<Integer, String>>() {}));
+    }
+
+    private static void GenerateNames(File file, long rows, int vocabulary) throws IOException {
+        SplittableRandom random = new SplittableRandom(7);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            for (long i = 0; i < rows; i++) {
+                int name = random.nextInt(vocabulary);
+                //about half of the names start with M and pass the filter of the word count
+                out.write((name & 1) == 0 ? 'M' : 'N');
+                out.write(Integer.toString(name));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static void GenerateIds(File file, long rows, String value) throws IOException {
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            for (long i = 0; i < rows; i++) {
+                out.write(Long.toString(i));
+                out.write(',');
+                out.write(value);
+                out.write(Long.toString(i));
+                out.write('\n');
+            }
+        }
+    }
+}
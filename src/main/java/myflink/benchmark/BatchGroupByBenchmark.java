@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.BatchJob;
+import org.apache.flink.api.common.JobExecutionResult;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.java.DataSet;
+import org.apache.flink.api.java.ExecutionEnvironment;
+import org.apache.flink.api.java.io.DiscardingOutputFormat;
+import org.apache.flink.api.java.tuple.Tuple4;
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Count and sum per (driverId, weekNo) of a generated "driverId,weekNo,value" file, once with boxed
+ * Tuple4 records grouped on two fields, as groupByExample did, and once with the packed long key and the per
+ * partition hash map combiner of {@link BatchJob#DriverWeekAverages}.
+ *
+ * <p>The input (--rows, default 100M, about 1.5 GB) is generated to --input once and reused by later runs.
+ */
+public class BatchGroupByBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long rows = params.getLong("rows", 100_000_000L);
+        int drivers = params.getInt("drivers", 100_000);
+        int weeks = params.getInt("weeks", 52);
+        int parallelism = params.getInt("p", Runtime.getRuntime().availableProcessors());
+        String input = params.get("input", "/tmp/driver-weeks-" + rows + ".csv");
+
+        File file = new File(input);
+        if (!file.exists()) {
+            Generate(file, rows, drivers, weeks);
+        }
+
+        System.out.println("variant,rows,parallelism,millis,rowsPerSecond");
+        for (String variant : params.get("variants", "boxed,packed").split(",")) {
+            ExecutionEnvironment env = ExecutionEnvironment.getExecutionEnvironment();
+            env.setParallelism(parallelism);
+            DataSet<String> lines = env.readTextFile(file.getAbsolutePath());
+
+            if (variant.equals("boxed")) {
+                lines.map(new MapFunction<String, Tuple4<Integer, Integer, Long, Long>>() {
+                            @Override
+                            public Tuple4<Integer, Integer, Long, Long> map(String s) {
+                                String[] tokens = s.split(",");
+                                return new Tuple4<>(Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]),
+                                        1L, Long.parseLong(tokens[2]));
+                            }
+                        })
+                        .groupBy(0, 1)
+                        .reduce((a, b) -> new Tuple4<>(a.f0, a.f1, a.f2 + b.f2, a.f3 + b.f3))
+                        .output(new DiscardingOutputFormat<>());
+            } else {
+                BatchJob.DriverWeekAverages(lines).output(new DiscardingOutputFormat<>());
+            }
+
+            JobExecutionResult result = env.execute("groupBy " + variant);
+            long millis = result.getNetRuntime();
+            System.out.printf("%s,%d,%d,%d,%.0f%n", variant, rows, parallelism, millis, rows * 1000.0 / millis);
+        }
+    }
+
+    static void Generate(File file, long rows, int drivers, int weeks) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            for (long i = 0; i < rows; i++) {
+                out.write(Integer.toString(random.nextInt(drivers)));
+                out.write(',');
+                out.write(Integer.toString(1 + random.nextInt(weeks)));
+                out.write(',');
+                out.write(Integer.toString(random.nextInt(1000)));
+                out.write('\n');
+            }
+        }
+    }
+}
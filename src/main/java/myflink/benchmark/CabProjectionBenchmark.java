@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.StreamingJob;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.core.memory.DataOutputSerializer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Bytes shuffled and CPU per record of the popular destination count (UdemyCourseAssignment, two keyBys) and the
+ * cab id count (KeyByFun, one keyBy), with the full CabRide wrapped in a Tuple2 and with the projected
+ * (column, 1) record of --projection true. The CPU time covers parsing and serializing the shuffled records, the
+ * file is read in chunks outside of the measurement.
+ *
+ * <p>The input (--rides, default 10M) is generated to --input once when it is missing.
+ */
+public class CabProjectionBenchmark {
+
+    private static final int CHUNK = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long rides = params.getLong("rides", 10_000_000L);
+        File input = new File(params.get("input", "/tmp/cab-rides-" + rides + ".txt"));
+        if (!input.exists()) {
+            Generate(input, rides);
+        }
+
+        ExecutionConfig config = new ExecutionConfig();
+        TypeSerializer<Tuple2<StreamingJob.CabRide, Integer>> full =
+                TypeInformation.of(new TypeHint<Tuple2<StreamingJob.CabRide, Integer>>() {}).createSerializer(config);
+        TypeSerializer<Tuple2<String, Integer>> projected =
+                TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}).createSerializer(config);
+
+        System.out.println("query,variant,records,shuffledBytesPerRecord,cpuNanosPerRecord");
+        for (int pass = 0; pass < 2; pass++) {
+            //the first pass warms up the JIT and is not printed
+            boolean print = pass == 1;
+            Run("destination", "full", input, 2, print, line -> {
+                StreamingJob.CabRide ride = StreamingJob.CabRide.fromString(line);
+                return ride.DropLocation == null ? null : Tuple2.of(ride, 1);
+            }, full);
+            Run("destination", "projected", input, 2, print,
+                    new StreamingJob.CabColumnProjection(6)::map, projected);
+            Run("cabId", "full", input, 1, print, line -> Tuple2.of(StreamingJob.CabRide.fromString(line), 1), full);
+            Run("cabId", "projected", input, 1, print, new StreamingJob.CabColumnProjection(0)::map, projected);
+        }
+    }
+
+    interface Parser<T> {
+        T parse(String line) throws Exception;
+    }
+
+    private static <T extends Tuple2<?, Integer>> void Run(String query, String variant, File input, int shuffles,
+                                                           boolean print, Parser<T> parser, TypeSerializer<T> serializer)
+            throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        DataOutputSerializer out = new DataOutputSerializer(256);
+        long records = 0;
+        long bytes = 0;
+        long cpuNanos = 0;
+
+        try (BufferedReader in = new BufferedReader(new FileReader(input), 1 << 20)) {
+            List<String> chunk = new ArrayList<>(CHUNK);
+            String line;
+            do {
+                chunk.clear();
+                while (chunk.size() < CHUNK && (line = in.readLine()) != null) {
+                    chunk.add(line);
+                }
+
+                long start = threads.getCurrentThreadCpuTime();
+                for (String l : chunk) {
+                    T record = parser.parse(l);
+                    if (record == null || record.f0 == null) {
+                        continue;
+                    }
+                    //every keyBy serializes the record once more
+                    for (int i = 0; i < shuffles; i++) {
+                        out.clear();
+                        serializer.serialize(record, out);
+                        bytes += out.length();
+                    }
+                    records++;
+                }
+                cpuNanos += threads.getCurrentThreadCpuTime() - start;
+            } while (chunk.size() == CHUNK);
+        }
+
+        if (print) {
+            System.out.printf("%s,%s,%d,%.1f,%.1f%n", query, variant, records,
+                    bytes * 1.0 / records, cpuNanos * 1.0 / records);
+        }
+    }
+
+    static void Generate(File file, long rides) throws IOException {
+        SplittableRandom random = new SplittableRandom(3);
+        String[] types = {"Sedan", "SUV", "Hatchback", "Mini"};
+        String[] drivers = {"Wanda", "Hank", "Grace", "Abe", "Ruth", "Tom", "Carla", "Vito"};
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file), 1 << 20)) {
+            for (long i = 0; i < rides; i++) {
+                int cab = random.nextInt(10_000);
+                out.write("id_" + cab + ",PB" + (1000 + cab % 9000) + "," + types[cab % types.length] + ","
+                        + drivers[cab % drivers.length] + ",");
+                if (random.nextInt(10) < 2) {
+                    out.write("no,'null','null','null'\n");
+                } else {
+                    out.write("yes,Sector " + random.nextInt(40) + ",Sector " + random.nextInt(40) + ","
+                            + (1 + random.nextInt(4)) + "\n");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.COQueries;
+import myflink.columnar.AirQualityColumn;
+import myflink.columnar.ColumnarReader;
+import myflink.columnar.ColumnarWriter;
+import myflink.columnar.RangePredicate;
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time to sum the arithmetic mean of county 31 over the CSV, parsing every row, and over the columnar file
+ * written by {@link ColumnarWriter}, reading two columns and skipping blocks by zone map. --sorted writes the
+ * columnar file from rows ordered by county, which is what lets the zone maps skip blocks; the generated rows
+ * come in random county order.
+ */
+public class ColumnarScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long rows = params.getLong("rows", 2_000_000);
+        int blockRows = params.getInt("blockrows", 65536);
+        int passes = params.getInt("passes", 3);
+
+        File csv = File.createTempFile("airquality", ".csv");
+        File columnar = File.createTempFile("airquality", ".aqc");
+        csv.deleteOnExit();
+        columnar.deleteOnExit();
+        AirQualityGenerator.Generate(csv, rows);
+        if (params.has("sorted")) {
+            File sorted = File.createTempFile("airquality-sorted", ".csv");
+            sorted.deleteOnExit();
+            SortByCounty(csv, sorted);
+            csv = sorted;
+        }
+        long convertStart = System.nanoTime();
+        ColumnarWriter.Convert(csv, columnar, blockRows);
+        System.out.printf("converted %d rows in %d ms, csv %d bytes, columnar %d bytes%n", rows,
+                (System.nanoTime() - convertStart) / 1_000_000, csv.length(), columnar.length());
+
+        RangePredicate county = new RangePredicate(AirQualityColumn.COUNTY_CODE, 31, 31);
+        System.out.println("variant,pass,ms,sum");
+        for (int pass = 0; pass <= passes; pass++) {
+            long start = System.nanoTime();
+            double sum = ScanCsv(csv);
+            System.out.printf("csv,%d,%d,%.3f%n", pass, (System.nanoTime() - start) / 1_000_000, sum);
+
+            start = System.nanoTime();
+            sum = ScanColumnar(columnar, Collections.singletonList(county));
+            System.out.printf("columnar,%d,%d,%.3f%n", pass, (System.nanoTime() - start) / 1_000_000, sum);
+        }
+    }
+
+    private static double ScanCsv(File csv) throws Exception {
+        double sum = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(csv))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                COQueries.AirQualityRecord record = COQueries.AirQualityRecord.fromString(line);
+                if (record.CountyCode == 31) {
+                    sum += record.ArithmeticMean;
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static double ScanColumnar(File columnar, List<RangePredicate> predicates) throws Exception {
+        double sum = 0;
+        int skipped = 0;
+        try (ColumnarReader reader = new ColumnarReader(columnar)) {
+            for (int block = 0; block < reader.getBlockCount(); block++) {
+                if (!reader.mayMatch(block, predicates)) {
+                    skipped++;
+                    continue;
+                }
+                IntBuffer counties = reader.ints(block, AirQualityColumn.COUNTY_CODE);
+                DoubleBuffer means = reader.doubles(block, AirQualityColumn.ARITHMETIC_MEAN);
+                for (int r = 0; r < reader.getRows(block); r++) {
+                    if (counties.get(r) == 31) {
+                        sum += means.get(r);
+                    }
+                }
+            }
+            if (skipped > 0) {
+                System.out.printf("skipped %d of %d blocks%n", skipped, reader.getBlockCount());
+            }
+        }
+        return sum;
+    }
+
+    private static void SortByCounty(File in, File out) throws Exception {
+        List<String> lines = Files.readAllLines(in.toPath());
+        lines.sort(Comparator.comparingInt(line -> Integer.parseInt(line.substring(line.indexOf(',') + 1,
+                line.indexOf(',', line.indexOf(',') + 1)))));
+        Files.write(out.toPath(), lines);
+    }
+}
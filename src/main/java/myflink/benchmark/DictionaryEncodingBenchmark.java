@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.StreamingJob;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.core.memory.DataOutputSerializer;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Network and state bytes of counting per drop location (cab data) and per website (web traffic data), with the
+ * string key and with the key dictionary encoded by {@link myflink.operators.DictionaryEncoder}, measured with the
+ * serializers Flink uses for the records and the state.
+ *
+ * <p>The string keyed pipeline shuffles (key, count) --shuffles times (count, then e.g. max and min per window)
+ * and keeps one (key, count) state entry per key and window. The encoded one shuffles the key string once to the
+ * encoder, then (id, count), keeps the state by id and adds the dictionary: one entry per key in the encoder, a
+ * broadcast copy in each of the --p decoder subtasks and one broadcast record per key and decoder subtask.
+ * The data files are replayed --repeat times over --windows windows.
+ */
+public class DictionaryEncodingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int repeat = params.getInt("repeat", 1000);
+        int shuffles = params.getInt("shuffles", 3);
+        int windows = params.getInt("windows", 100);
+        int parallelism = params.getInt("p", 4);
+
+        List<String> dropLocations = Keys("src/main/resources/cab-flink.txt", line -> {
+            StreamingJob.CabRide ride = StreamingJob.CabRide.fromString(line);
+            return ride.DropLocation;
+        });
+        List<String> webSites = Keys("src/main/resources/udemyAss2.txt",
+                line -> StreamingJob.WebTraffic.fromString(line).WebSite);
+
+        System.out.println("dataset,records,keys,variant,networkBytes,stateBytes,networkBytesPerRecord");
+        Report("cab", dropLocations, repeat, shuffles, windows, parallelism);
+        Report("web", webSites, repeat, shuffles, windows, parallelism);
+    }
+
+    private static List<String> Keys(String file, Function<String, String> key) throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file))) {
+            String k = key.apply(line);
+            if (k != null) {
+                keys.add(k);
+            }
+        }
+        return keys;
+    }
+
+    private static void Report(String dataset, List<String> keys, int repeat, int shuffles, int windows, int parallelism)
+            throws Exception {
+        ExecutionConfig config = new ExecutionConfig();
+        TypeSerializer<Tuple2<String, Integer>> stringKeyed =
+                TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}).createSerializer(config);
+        TypeSerializer<Tuple2<Integer, Integer>> idKeyed =
+                TypeInformation.of(new TypeHint<Tuple2<Integer, Integer>>() {}).createSerializer(config);
+        TypeSerializer<Tuple2<Integer, String>> entry =
+                TypeInformation.of(new TypeHint<Tuple2<Integer, String>>() {}).createSerializer(config);
+        TypeSerializer<String> string = TypeInformation.of(String.class).createSerializer(config);
+        TypeSerializer<Integer> integer = TypeInformation.of(Integer.class).createSerializer(config);
+
+        DataOutputSerializer out = new DataOutputSerializer(64);
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        long stringRecords = 0;
+        long idRecords = 0;
+        long keyStrings = 0;
+        for (String key : keys) {
+            Integer id = ids.computeIfAbsent(key, k -> ids.size());
+            stringRecords += Bytes(out, stringKeyed, Tuple2.of(key, 1));
+            idRecords += Bytes(out, idKeyed, Tuple2.of(id, 1));
+            keyStrings += Bytes(out, string, key);
+        }
+
+        long stringState = 0;
+        long idState = 0;
+        long dictionary = 0;
+        for (Map.Entry<String, Integer> key : ids.entrySet()) {
+            // a keyed state entry is the serialized key next to the serialized value
+            stringState += Bytes(out, string, key.getKey()) + Bytes(out, integer, 1);
+            idState += Bytes(out, integer, key.getValue()) + Bytes(out, integer, 1);
+            dictionary += Bytes(out, entry, Tuple2.of(key.getValue(), key.getKey()));
+        }
+
+        long records = (long) keys.size() * repeat;
+        long baselineNetwork = stringRecords * repeat * shuffles;
+        long baselineState = stringState * windows;
+        long encodedNetwork = keyStrings * repeat + idRecords * repeat * shuffles + dictionary * parallelism;
+        long encodedState = idState * windows + dictionary * (1 + parallelism);
+
+        System.out.printf("%s,%d,%d,string,%d,%d,%.1f%n", dataset, records, ids.size(),
+                baselineNetwork, baselineState, baselineNetwork * 1.0 / records);
+        System.out.printf("%s,%d,%d,dictionary,%d,%d,%.1f%n", dataset, records, ids.size(),
+                encodedNetwork, encodedState, encodedNetwork * 1.0 / records);
+        System.out.printf("%s reduction: network %.1f%%, state %.1f%%%n", dataset,
+                100.0 * (baselineNetwork - encodedNetwork) / baselineNetwork,
+                100.0 * (baselineState - encodedState) / baselineState);
+    }
+
+    private static <T> int Bytes(DataOutputSerializer out, TypeSerializer<T> serializer, T value) throws Exception {
+        out.clear();
+        serializer.serialize(value, out);
+        return out.length();
+    }
+}
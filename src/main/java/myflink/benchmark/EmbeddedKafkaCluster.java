@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+import org.apache.flink.util.FileUtils;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * Single broker Kafka cluster with its own ZooKeeper, running inside the current JVM. The broker is configured for
+ * transactions with a replication factor of one, so the exactly-once producer works against it.
+ */
+public class EmbeddedKafkaCluster implements AutoCloseable {
+
+    private File dataDir;
+    private ServerCnxnFactory zkFactory;
+    private KafkaServerStartable broker;
+    private String bootstrapServers;
+
+    public EmbeddedKafkaCluster start() throws Exception {
+        dataDir = Files.createTempDirectory("embedded-kafka").toFile();
+
+        File zkDir = new File(dataDir, "zookeeper");
+        ZooKeeperServer zooKeeper = new ZooKeeperServer(zkDir, zkDir, 2000);
+        zkFactory = ServerCnxnFactory.createFactory(new InetSocketAddress("localhost", 0), 100);
+        zkFactory.startup(zooKeeper);
+
+        int port = freePort();
+        bootstrapServers = "localhost:" + port;
+
+        Properties props = new Properties();
+        props.put("broker.id", "0");
+        props.put("zookeeper.connect", "localhost:" + zkFactory.getLocalPort());
+        props.put("listeners", "PLAINTEXT://" + bootstrapServers);
+        props.put("log.dirs", new File(dataDir, "kafka").getAbsolutePath());
+        props.put("offsets.topic.replication.factor", "1");
+        props.put("offsets.topic.num.partitions", "1");
+        props.put("transaction.state.log.replication.factor", "1");
+        props.put("transaction.state.log.min.isr", "1");
+        props.put("transaction.state.log.num.partitions", "1");
+        props.put("group.initial.rebalance.delay.ms", "0");
+
+        broker = new KafkaServerStartable(KafkaConfig.fromProps(props));
+        broker.startup();
+        return this;
+    }
+
+    public String getBootstrapServers() {
+        return bootstrapServers;
+    }
+
+    public void createTopic(String topic, int partitions) throws Exception {
+        Properties props = new Properties();
+        props.put("bootstrap.servers", bootstrapServers);
+        try (AdminClient admin = AdminClient.create(props)) {
+            admin.createTopics(Collections.singleton(new NewTopic(topic, partitions, (short) 1))).all().get();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (broker != null) {
+            broker.shutdown();
+            broker.awaitShutdown();
+        }
+        if (zkFactory != null) {
+            zkFactory.shutdown();
+        }
+        if (dataDir != null) {
+            FileUtils.deleteDirectory(dataDir);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.sinks.RollingFileSink;
+import org.apache.flink.api.common.JobExecutionResult;
+import org.apache.flink.api.common.serialization.SimpleStringEncoder;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.core.fs.Path;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.filesystem.StreamingFileSink;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of writing (website, count) records with print(), the StreamingFileSink with a row format and the
+ * {@link RollingFileSink} in csv and binary, with checkpoints every --checkpoint millis. print() writes to a
+ * discarding stdout, so only its formatting and locking is measured, not the terminal.
+ *
+ * <p>Prints one CSV line per sink with the net runtime of the job and the bytes written.
+ */
+public class FileSinkBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long records = params.getLong("records", 20_000_000L);
+        int parallelism = params.getInt("p", Runtime.getRuntime().availableProcessors());
+        long checkpointInterval = params.getLong("checkpoint", 10_000);
+        File dir = new File(params.get("dir", "/tmp/file-sink-benchmark"));
+
+        PrintStream stdout = System.out;
+        stdout.println("sink,records,parallelism,millis,recordsPerSecond,bytes");
+        for (String sink : params.get("sinks", "print,streamingfilesink,rolling-csv,rolling-binary").split(",")) {
+            File output = new File(dir, sink);
+            Delete(output);
+
+            StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+            env.setParallelism(parallelism);
+            env.enableCheckpointing(checkpointInterval);
+            DataStream<Tuple2<String, Long>> metrics = env.fromSequence(0, records - 1)
+                    .map(i -> Tuple2.of("site" + (i % 1000), i))
+                    .returns(TypeInformation.of(new TypeHint<Tuple2<String, Long>>() {}));
+
+            switch (sink) {
+                case "print":
+                    metrics.print();
+                    break;
+                case "streamingfilesink":
+                    metrics.addSink(StreamingFileSink
+                            .forRowFormat(new Path(output.getAbsolutePath()),
+                                    new SimpleStringEncoder<Tuple2<String, Long>>())
+                            .build());
+                    break;
+                case "rolling-csv":
+                    metrics.addSink(new RollingFileSink<>(output.getAbsolutePath(), RollingFileSink.csv(), ".csv"));
+                    break;
+                case "rolling-binary":
+                    metrics.addSink(new RollingFileSink<>(output.getAbsolutePath(),
+                            RollingFileSink.binary(metrics.getType().createSerializer(env.getConfig())), ".bin"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown sink " + sink);
+            }
+
+            System.setOut(new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }));
+            JobExecutionResult result;
+            try {
+                result = env.execute(sink);
+            } finally {
+                System.setOut(stdout);
+            }
+            long millis = result.getNetRuntime(TimeUnit.MILLISECONDS);
+            stdout.printf("%s,%d,%d,%d,%.0f,%d%n", sink, records, parallelism, millis,
+                    records * 1000.0 / Math.max(1, millis), Size(output));
+        }
+    }
+
+    private static long Size(File file) {
+        if (file.isDirectory()) {
+            long size = 0;
+            File[] children = file.listFiles();
+            for (File child : children == null ? new File[0] : children) {
+                size += Size(child);
+            }
+            return size;
+        }
+        return file.length();
+    }
+
+    private static void Delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                Delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.KafkaFlinkExample;
+import org.apache.flink.api.common.serialization.SimpleStringSchema;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.CheckpointingMode;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * Runs the exactly-once pipeline of {@link KafkaFlinkExample} against an {@link EmbeddedKafkaCluster} for several
+ * producer batch settings and reports the throughput. After every run the output topic is read with
+ * read_committed and the run fails if the number of records differs from the input (no loss, no duplicates).
+ *
+ * <p>Batch settings are given as linger.ms:batch.size:compression.type, e.g.
+ * {@code --settings 0:16384:none,5:65536:lz4,20:262144:lz4 --records 1000000}.
+ *
+ * <p>The broker is a provided dependency, run the benchmark from the IDE or with
+ * {@code mvn exec:java -Dexec.mainClass=myflink.benchmark.KafkaThroughputBenchmark -Dexec.classpathScope=compile}.
+ */
+public class KafkaThroughputBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int records = params.getInt("records", 1_000_000);
+        String[] settings = params.get("settings", "0:16384:none,5:65536:lz4,20:262144:lz4,20:262144:zstd").split(",");
+
+        try (EmbeddedKafkaCluster kafka = new EmbeddedKafkaCluster().start()) {
+            //a single partition, the end marker then stops the source after all records
+            kafka.createTopic("input", 1);
+            fillInput(kafka.getBootstrapServers(), "input", records);
+
+            System.out.println("lingerMs,batchSize,compression,records,seconds,recordsPerSecond");
+            int run = 0;
+            for (String setting : settings) {
+                String[] s = setting.split(":");
+                String output = "output-" + run++;
+                kafka.createTopic(output, 1);
+
+                Properties props = KafkaFlinkExample.KafkaProperties(ParameterTool.fromArgs(new String[]{
+                        "--bootstrap.servers", kafka.getBootstrapServers(),
+                        "--security.protocol", "PLAINTEXT",
+                        "--group.id", output,
+                        "--linger.ms", s[0],
+                        "--batch.size", s[1],
+                        "--compression.type", s[2]}));
+                props.put("auto.offset.reset", "earliest");
+
+                long start = System.nanoTime();
+                runPipeline(props, "input", output, params.getLong("ci", 1000));
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                long written = countCommitted(kafka.getBootstrapServers(), output);
+                if (written != records) {
+                    throw new IllegalStateException("Expected " + records + " committed records in " + output
+                            + " but found " + written);
+                }
+                System.out.printf("%s,%s,%s,%d,%.2f,%.0f%n", s[0], s[1], s[2], records, seconds, records / seconds);
+            }
+        }
+    }
+
+    private static void runPipeline(Properties props, String input, String output, long checkpointInterval)
+            throws Exception {
+        Configuration config = new Configuration();
+        //commit the last transaction with a final checkpoint once the source reached the end marker
+        config.setBoolean("execution.checkpointing.checkpoints-after-tasks-finish.enabled", true);
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(1, config);
+        env.enableCheckpointing(checkpointInterval, CheckpointingMode.EXACTLY_ONCE);
+
+        KafkaFlinkExample.BuildPipeline(env, props, input, output, new EndMarkerSchema());
+        env.execute("Kafka throughput benchmark");
+    }
+
+    private static void fillInput(String bootstrapServers, String topic, int records) {
+        Properties props = new Properties();
+        props.put("bootstrap.servers", bootstrapServers);
+        props.put("linger.ms", "20");
+        props.put("batch.size", "262144");
+        try (KafkaProducer<String, String> producer =
+                     new KafkaProducer<>(props, new StringSerializer(), new StringSerializer())) {
+            for (int i = 0; i < records; i++) {
+                producer.send(new ProducerRecord<>(topic, "the quick brown fox jumps over the lazy dog " + i));
+            }
+            producer.send(new ProducerRecord<>(topic, EndMarkerSchema.END));
+        }
+    }
+
+    private static long countCommitted(String bootstrapServers, String topic) {
+        Properties props = new Properties();
+        props.put("bootstrap.servers", bootstrapServers);
+        props.put("group.id", "verify-" + topic);
+        props.put("auto.offset.reset", "earliest");
+        props.put("isolation.level", "read_committed");
+
+        long count = 0;
+        int emptyPolls = 0;
+        try (KafkaConsumer<String, String> consumer =
+                     new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer())) {
+            consumer.subscribe(Collections.singleton(topic));
+            while (emptyPolls < 5) {
+                ConsumerRecords<String, String> polled = consumer.poll(Duration.ofSeconds(1));
+                emptyPolls = polled.isEmpty() ? emptyPolls + 1 : 0;
+                count += polled.count();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Ends the otherwise unbounded Kafka source when the marker record written after the input is read.
+     */
+    static class EndMarkerSchema extends SimpleStringSchema {
+
+        static final String END = "__END__";
+
+        @Override
+        public boolean isEndOfStream(String nextElement) {
+            return END.equals(nextElement);
+        }
+    }
+}
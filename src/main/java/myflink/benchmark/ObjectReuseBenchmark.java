@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.COQueries;
+import myflink.StreamingJob;
+import myflink.WordsCapitalizer;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.functions.FlatMapFunction;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.util.Collector;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Allocation per record of the simple map chains, with the allocating functions used before and with the reusing
+ * ones, each with object reuse off and on. With object reuse off Flink copies every record handed to a chained
+ * operator, the benchmark does the same copy with the type serializer.
+ *
+ * <p>Allocation is read from the thread allocation counter of the JVM, the GC count and time are printed as well.
+ * Add {@code -Xlog:gc} (or {@code -verbose:gc} on Java 8) to the JVM options to get the GC log of the run.
+ */
+public class ObjectReuseBenchmark {
+
+    private static final String LINE = "the quick brown fox jumps over the lazy dog";
+    private static final String ROW = "6,37,0007,44201,1,34.1,-118.1,WGS84,Ozone,8-HR RUN AVG BEGIN HOUR,"
+            + "Ozone 8-hour 2015,2020-01-01,Parts per million,None,17,71.0,0.021,0.031,9,29,087,INSTRUMENTAL,"
+            + "Site,Address,California,Ventura,Simi Valley,Oxnard CA,2020-03-04";
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long records = params.getLong("records", 20_000_000);
+
+        ExecutionConfig config = new ExecutionConfig();
+        TypeSerializer<Tuple2<String, Integer>> pairSerializer =
+                TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}).createSerializer(config);
+        TypeSerializer<Tuple3<Integer, String, Integer>> rowSerializer =
+                TypeInformation.of(new TypeHint<Tuple3<Integer, String, Integer>>() {}).createSerializer(config);
+
+        MapFunction<String, Tuple2<String, Integer>> allocatingWordToPair = s -> new Tuple2<>(s, 1);
+        FlatMapFunction<String, Tuple2<String, Integer>> allocatingLineSplitter = (line, out) -> {
+            for (String word : line.split(" ")) {
+                out.collect(new Tuple2<>(word.toLowerCase(), 1));
+            }
+        };
+        MapFunction<String, Tuple3<Integer, String, Integer>> allocatingQuery1Parser = s -> {
+            String[] cols = s.split(",");
+            return new Tuple3<>(Integer.parseInt(cols[1]), cols[16], 1);
+        };
+        MapFunction<String, String> allocatingCapitalizer = String::toUpperCase;
+
+        StreamingJob.LineSplitter lineSplitter = new StreamingJob.LineSplitter();
+
+        System.out.println("function,reusingFunction,objectReuse,bytesPerRecord,nsPerRecord,gcCount,gcMillis");
+        for (boolean objectReuse : new boolean[]{false, true}) {
+            run("WordToPair", false, objectReuse, records, pairSerializer, out -> out.collect(allocatingWordToPair.map("word")));
+            run("WordToPair", true, objectReuse, records, pairSerializer, new MapRecord<>(new StreamingJob.WordToPair(), "word"));
+            run("LineSplitter", false, objectReuse, records / 9, pairSerializer, out -> allocatingLineSplitter.flatMap(LINE, out));
+            run("LineSplitter", true, objectReuse, records / 9, pairSerializer, out -> lineSplitter.flatMap(LINE, out));
+            run("Query1Parser", false, objectReuse, records / 10, rowSerializer, out -> out.collect(allocatingQuery1Parser.map(ROW)));
+            run("Query1Parser", true, objectReuse, records / 10, rowSerializer, new MapRecord<>(new COQueries.Query1Parser(), ROW));
+            run("WordsCapitalizer", false, objectReuse, records, null, out -> out.collect(allocatingCapitalizer.map(LINE)));
+            run("WordsCapitalizer", true, objectReuse, records, null, new MapRecord<>(new WordsCapitalizer(), LINE));
+        }
+    }
+
+    private static <T> void run(String name, boolean reusing, boolean objectReuse, long records,
+                                TypeSerializer<T> serializer, Producer<T> producer) throws Exception {
+
+        ChainedOutput<T> out = new ChainedOutput<>(objectReuse || serializer == null ? null : serializer);
+
+        //warm up, so the JIT has compiled the loop before it is measured
+        for (long i = 0; i < records / 10; i++) {
+            producer.produce(out);
+        }
+
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        out.count = 0;
+        for (long i = 0; i < records; i++) {
+            producer.produce(out);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes() - allocated;
+
+        System.out.printf("%s,%s,%s,%.1f,%.1f,%d,%d%n", name, reusing, objectReuse,
+                bytes * 1.0 / out.count, nanos * 1.0 / out.count, gcCount() - gcCount, gcMillis() - gcMillis);
+        if (out.sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += gc.getCollectionTime();
+        }
+        return millis;
+    }
+
+    private interface Producer<T> {
+        void produce(Collector<T> out) throws Exception;
+    }
+
+    private static class MapRecord<I, T> implements Producer<T> {
+        private final MapFunction<I, T> function;
+        private final I input;
+
+        MapRecord(MapFunction<I, T> function, I input) {
+            this.function = function;
+            this.input = input;
+        }
+
+        @Override
+        public void produce(Collector<T> out) throws Exception {
+            out.collect(function.map(input));
+        }
+    }
+
+    /**
+     * Stands in for the chained operator: copies the record like Flink does without object reuse and keeps a
+     * reference to it, so the JIT can not drop the work.
+     */
+    private static class ChainedOutput<T> implements Collector<T> {
+        private final TypeSerializer<T> copier;
+        long count;
+        int sink;
+
+        ChainedOutput(TypeSerializer<T> copier) {
+            this.copier = copier;
+        }
+
+        @Override
+        public void collect(T record) {
+            T handedOver = copier == null ? record : copier.copy(record);
+            sink += handedOver.hashCode();
+            count++;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
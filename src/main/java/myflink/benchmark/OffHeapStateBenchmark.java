@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.util.OffHeapKeyedStateMap;
+import org.apache.flink.api.common.typeutils.base.IntSerializer;
+import org.apache.flink.api.common.typeutils.base.StringSerializer;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.core.memory.DataOutputViewStreamWrapper;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Word counts of --keys distinct words (default 20 million) kept on the heap, the way the filesystem backend keeps
+ * them, and in an {@link OffHeapKeyedStateMap}: --updates random increments (default twice the keys) after the
+ * keys are inserted, with the time per update, the GC count and time of the whole run, the heap left in use and
+ * the off-heap bytes. Once all keys are in, the off-heap run writes a copy-on-write snapshot of all key groups
+ * from a second thread while it keeps updating, and reports how long that took and its size.
+ *
+ * <p>Run with a heap large enough for the heap variant, e.g. -Xmx8g, and compare the GC columns.
+ */
+public class OffHeapStateBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int keys = params.getInt("keys", 20_000_000);
+        long updates = params.getLong("updates", 2L * keys);
+        int maxParallelism = params.getInt("maxparallelism", 128);
+        int pageSize = params.getInt("pagesize", 32 * 1024);
+        long maxBytes = params.getLong("offheapmb", 4096) * 1024 * 1024;
+
+        System.out.println("variant,keys,nsPerUpdate,gcCount,gcMillis,heapBytes,offHeapBytes,snapshotMillis,snapshotBytes");
+        runHeap(keys, updates, maxParallelism);
+        runOffHeap(keys, updates, maxParallelism, pageSize, maxBytes);
+    }
+
+    private static void runHeap(int keys, long updates, int maxParallelism) {
+        //one map per key group, like the state table of the heap backend
+        @SuppressWarnings("unchecked")
+        Map<String, Integer>[] counts = new Map[maxParallelism];
+        for (int i = 0; i < maxParallelism; i++) {
+            counts[i] = new HashMap<>();
+        }
+
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long start = System.nanoTime();
+        Random random = new Random(42);
+        for (long i = 0; i < keys + updates; i++) {
+            String word = "word" + (i < keys ? i : random.nextInt(keys));
+            Map<String, Integer> keyGroup = counts[KeyGroupRangeAssignment.assignToKeyGroup(word, maxParallelism)];
+            keyGroup.merge(word, 1, Integer::sum);
+        }
+        long nanos = System.nanoTime() - start;
+        long heapBytes = heapBytes();
+
+        //reading the sizes after heapBytes() keeps the maps reachable while it is measured
+        long size = 0;
+        for (Map<String, Integer> keyGroup : counts) {
+            size += keyGroup.size();
+        }
+        System.out.printf("heap,%d,%.1f,%d,%d,%d,0,0,0%n", size, nanos * 1.0 / (keys + updates),
+                gcCount() - gcCount, gcMillis() - gcMillis, heapBytes);
+    }
+
+    private static void runOffHeap(int keys, long updates, int maxParallelism, int pageSize, long maxBytes)
+            throws Exception {
+        //collect the heap variant first, so its garbage is not counted here
+        System.gc();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        ExecutorService snapshotWriter = Executors.newSingleThreadExecutor();
+        try (OffHeapKeyedStateMap<String, Integer> counts = new OffHeapKeyedStateMap<>(StringSerializer.INSTANCE,
+                IntSerializer.INSTANCE, new KeyGroupRange(0, maxParallelism - 1), pageSize, maxBytes)) {
+
+            long start = System.nanoTime();
+            Random random = new Random(42);
+            Future<long[]> snapshotResult = null;
+            for (long i = 0; i < keys + updates; i++) {
+                String word = "word" + (i < keys ? i : random.nextInt(keys));
+                int keyGroup = KeyGroupRangeAssignment.assignToKeyGroup(word, maxParallelism);
+                Integer count = counts.get(word, keyGroup);
+                counts.put(word, keyGroup, count == null ? 1 : count + 1);
+
+                //once all keys are in, write a snapshot from another thread while the updates go on, like the
+                //asynchronous part of a checkpoint
+                if (i == keys) {
+                    snapshotResult = snapshotWriter.submit(WriteSnapshot(counts.snapshot(), maxParallelism));
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            long[] snapshot = snapshotResult == null ? new long[2] : snapshotResult.get();
+            long heapBytes = heapBytes();
+
+            System.out.printf("offheap,%d,%.1f,%d,%d,%d,%d,%d,%d%n", counts.size(), nanos * 1.0 / (keys + updates),
+                    gcCount() - gcCount, gcMillis() - gcMillis, heapBytes, counts.getAllocatedBytes(),
+                    snapshot[0] / 1_000_000, snapshot[1]);
+        } finally {
+            snapshotWriter.shutdown();
+        }
+    }
+
+    /**
+     * Writes all key groups of the snapshot to a counting stream and closes it. Returns the nanos it took and the
+     * bytes written.
+     */
+    private static Callable<long[]> WriteSnapshot(OffHeapKeyedStateMap<String, Integer>.Snapshot snapshot,
+                                                  int maxParallelism) {
+        return () -> {
+            long[] bytes = new long[1];
+            DataOutputViewStreamWrapper out = new DataOutputViewStreamWrapper(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    bytes[0]++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    bytes[0] += len;
+                }
+            });
+            long start = System.nanoTime();
+            try {
+                for (int keyGroup = 0; keyGroup < maxParallelism; keyGroup++) {
+                    snapshot.write(keyGroup, out);
+                }
+                out.flush();
+            } finally {
+                snapshot.close();
+            }
+            return new long[]{System.nanoTime() - start, bytes[0]};
+        };
+    }
+
+    private static long heapBytes() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += gc.getCollectionTime();
+        }
+        return millis;
+    }
+}
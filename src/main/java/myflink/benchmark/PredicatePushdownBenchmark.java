@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.COQueries;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Cost per row of the Query1 parse and filter, with the full split of {@link COQueries.Query1Parser} followed by
+ * the county filter and with the filter pushed into the tokenizer by {@link COQueries.Query1FilteringParser}, for
+ * rows where --selectivities of them match the county.
+ */
+public class PredicatePushdownBenchmark {
+
+    private static final String TAIL = ",0007,44201,1,34.1,-118.1,WGS84,Ozone,8-HR RUN AVG BEGIN HOUR,"
+            + "Ozone 8-hour 2015,2020-01-01,Parts per million,None,17,71.0,0.021,0.031,9,29,087,INSTRUMENTAL,"
+            + "Site,Address,California,Ventura,Simi Valley,Oxnard CA,2020-03-04";
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int rows = params.getInt("rows", 2_000_000);
+        int passes = params.getInt("passes", 5);
+
+        System.out.println("selectivity,variant,rows,matched,nsPerRow");
+        for (String selectivity : params.get("selectivities", "0.001,0.01,0.1,0.5,1").split(",")) {
+            List<String> data = Rows(rows, Double.parseDouble(selectivity));
+
+            COQueries.Query1Parser parser = new COQueries.Query1Parser();
+            Run(selectivity, "split-then-filter", data, passes, (row, out) -> {
+                Tuple3<Integer, String, Integer> parsed = parser.map(row);
+                if (parsed.f0 == 31) {
+                    out.collect(parsed);
+                }
+            });
+            Run(selectivity, "pushdown", data, passes, new COQueries.Query1FilteringParser(31)::flatMap);
+        }
+    }
+
+    interface Query {
+        void apply(String row, Collector<Tuple3<Integer, String, Integer>> out) throws Exception;
+    }
+
+    private static void Run(String selectivity, String variant, List<String> data, int passes, Query query)
+            throws Exception {
+        CountingCollector out = new CountingCollector();
+        long nanos = 0;
+        //the first pass warms up the JIT and is not counted
+        for (int pass = 0; pass <= passes; pass++) {
+            out.count = 0;
+            long start = System.nanoTime();
+            for (String row : data) {
+                query.apply(row, out);
+            }
+            if (pass > 0) {
+                nanos += System.nanoTime() - start;
+            }
+        }
+        System.out.printf("%s,%s,%d,%d,%.1f%n", selectivity, variant, data.size(), out.count,
+                nanos * 1.0 / passes / data.size());
+    }
+
+    private static List<String> Rows(int rows, double selectivity) {
+        SplittableRandom random = new SplittableRandom(9);
+        List<String> data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int county = random.nextDouble() < selectivity ? 31 : 32 + random.nextInt(170);
+            data.add((1 + random.nextInt(56)) + "," + county + TAIL);
+        }
+        return data;
+    }
+
+    private static class CountingCollector implements Collector<Tuple3<Integer, String, Integer>> {
+        long count;
+        int sink;
+
+        @Override
+        public void collect(Tuple3<Integer, String, Integer> record) {
+            count++;
+            sink += record.f1.length();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.StreamingJob;
+import myflink.sources.SyntheticWordSource;
+import org.apache.flink.api.common.functions.FlatMapFunction;
+import org.apache.flink.api.common.functions.RichFlatMapFunction;
+import org.apache.flink.api.common.state.CheckpointListener;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.FlinkRuntimeException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the time from a deliberate crash (the "Ahah" exception of the 4** examples) until the first record
+ * reaches the sink again, for every state backend with and without task-local recovery.
+ *
+ * <p>Run with e.g. {@code --backends filesystem,rocksdb,ndb --p 2 --vocabulary 1000000}. --incremental applies to
+ * both runs of a backend, so only local recovery differs between them. The job runs on the local
+ * mini cluster, so the crash and the first record after the restart can be observed through static fields.
+ */
+public class RecoveryBenchmark {
+
+    private static final AtomicBoolean crashed = new AtomicBoolean();
+    private static final AtomicLong crashedAt = new AtomicLong();
+    private static final AtomicLong recoveredAt = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+
+        String[] backends = params.get("backends", "filesystem,rocksdb").split(",");
+        int parallelism = params.getInt("p", 1);
+
+        boolean incremental = params.getBoolean("incremental", false);
+
+        System.out.println("backend,incremental,localRecovery,parallelism,timeToFirstRecordMs");
+        for (String backend : backends) {
+            for (boolean localRecovery : new boolean[]{false, true}) {
+                long millis = measure(backend, localRecovery, parallelism, params);
+                System.out.println(backend + "," + incremental + "," + localRecovery + "," + parallelism + ","
+                        + millis);
+            }
+        }
+    }
+
+    /**
+     * Runs the crashing word count once and returns the time to first record after the restart in milliseconds,
+     * or -1 if the job finished without crashing.
+     */
+    public static long measure(String backend, boolean localRecovery, int parallelism, ParameterTool params)
+            throws Exception {
+
+        crashed.set(false);
+        crashedAt.set(0);
+        recoveredAt.set(0);
+
+        Configuration config = StreamingJob.CreateConfiguration(params);
+        config.setString("state.backend", backend);
+        if (localRecovery) {
+            StreamingJob.EnableLocalRecovery(config, params.get("lrdir", "/tmp/flinklocalrecovery"));
+        }
+        //restart immediately, the benchmark is about restoring the state and not about the restart delay
+        config.setString("restart-strategy", "fixed-delay");
+        config.setString("restart-strategy.fixed-delay.attempts", "3");
+        config.setString("restart-strategy.fixed-delay.delay", "0 s");
+
+        final StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(parallelism, config);
+        env.enableCheckpointing(params.getLong("ci", 2000));
+
+        env.addSource(new SyntheticWordSource(
+                        params.getLong("lines", 200_000),
+                        params.getInt("vocabulary", 1_000_000),
+                        params.getInt("words", 10),
+                        params.getLong("rate", 20_000)))
+                .flatMap(new FlatMapFunction<String, Tuple2<String, Integer>>() {
+                    @Override
+                    public void flatMap(String line, Collector<Tuple2<String, Integer>> collector) throws Exception {
+                        for (String word : line.split(" ")) {
+                            collector.collect(new Tuple2<>(word, 1));
+                        }
+                    }
+                })
+                .keyBy(t -> t.f0)
+                .flatMap(new CrashingCounter())
+                .addSink(new FirstRecordAfterRestartSink());
+
+        env.execute("Recovery benchmark " + backend + (localRecovery ? " (local recovery)" : ""));
+
+        if (!crashed.get() || recoveredAt.get() == 0) {
+            return -1;
+        }
+        return (recoveredAt.get() - crashedAt.get()) / 1_000_000;
+    }
+
+    /**
+     * Same counting logic as example 401, but crashes exactly once after the first completed checkpoint so that
+     * the restart has state to restore.
+     */
+    private static class CrashingCounter extends RichFlatMapFunction<Tuple2<String, Integer>, Tuple2<String, Integer>>
+            implements CheckpointListener {
+
+        private transient ValueState<Integer> countValueState;
+        private transient boolean checkpointed;
+
+        @Override
+        public void open(Configuration parameters) throws Exception {
+            countValueState = getRuntimeContext().getState(
+                    new ValueStateDescriptor<>("countValueState", BasicTypeInfo.INT_TYPE_INFO));
+        }
+
+        @Override
+        public void flatMap(Tuple2<String, Integer> s, Collector<Tuple2<String, Integer>> collector) throws Exception {
+            if (checkpointed && getRuntimeContext().getAttemptNumber() == 0 && crashed.compareAndSet(false, true)) {
+                crashedAt.set(System.nanoTime());
+                throw new FlinkRuntimeException("Ahah");
+            }
+
+            Integer count = countValueState.value();
+            if (count == null) count = 0;
+            countValueState.update(++count);
+            collector.collect(new Tuple2<>(s.f0, count));
+        }
+
+        @Override
+        public void notifyCheckpointComplete(long checkpointId) {
+            checkpointed = true;
+        }
+    }
+
+    private static class FirstRecordAfterRestartSink extends RichSinkFunction<Tuple2<String, Integer>> {
+
+        @Override
+        public void invoke(Tuple2<String, Integer> value, Context context) {
+            if (getRuntimeContext().getAttemptNumber() > 0) {
+                recoveredAt.compareAndSet(0, System.nanoTime());
+            }
+        }
+    }
+}
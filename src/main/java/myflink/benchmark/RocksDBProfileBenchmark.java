@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The counter examples on RocksDB with the stock options and with the point lookup profile
+ * ({@code --rocksdb.profile pointlookup}), on the synthetic input with the blackhole sink. Runs every example
+ * --repeat times per profile with {@link BackendMatrixBenchmark#run} and prints one CSV line per run.
+ *
+ * <p>A vocabulary larger than the block cache makes the lookups of new and evicted words hit the sst files,
+ * which is where the bloom filters pay off.
+ */
+public class RocksDBProfileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int parallelism = params.getInt("p", 1);
+        int repeat = params.getInt("repeat", 3);
+
+        System.out.println("example,profile,run,linesPerSecond,checkpointDurationMs,checkpointSizeBytes");
+        for (String example : params.get("e", "3,106,401").split(",")) {
+            for (String profile : params.get("profiles", "default,pointlookup").split(",")) {
+                for (int run = 0; run < repeat; run++) {
+                    Map<String, String> runParams = new HashMap<>(params.toMap());
+                    runParams.put("rocksdb.profile", profile);
+                    runParams.put("sink", "blackhole");
+                    runParams.putIfAbsent("vocabulary", "5000000");
+
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    BackendMatrixBenchmark.run(Integer.parseInt(example), "rocksdb", parallelism,
+                            ParameterTool.fromMap(runParams), result);
+                    System.out.printf("%s,%s,%d,%.0f,%d,%d%n", example, profile, run,
+                            (Double) result.get("linesPerSecond"), result.get("checkpointDurationMs"),
+                            result.get("checkpointSizeBytes"));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.COQueries;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * COQueries Query1, Query2 and Query4 over a generated air quality file (--rows, default 12M, about 3 GB),
+ * once as three jobs that each read and parse the file, as COQueries ran them, and once as one shared scan job.
+ * Prints wall time and the CPU time of the process (the local cluster runs in it) for both.
+ */
+public class SharedScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long rows = params.getLong("rows", 12_000_000L);
+        File input = new File(params.get("input", "/tmp/air-quality-" + rows + ".csv"));
+        int parallelism = params.getInt("p", Runtime.getRuntime().availableProcessors());
+        String[] queries = params.get("queries", "1,2,4").split(",");
+
+        if (!input.exists()) {
+            AirQualityGenerator.Generate(input, rows);
+        }
+        ParameterTool jobParams = ParameterTool.fromArgs(new String[]{"--input", input.getAbsolutePath()});
+
+        System.out.println("mode,queries,rows,parallelism,wallMillis,cpuMillis");
+
+        long wall = System.nanoTime();
+        long cpu = CpuNanos();
+        for (String query : queries) {
+            StreamExecutionEnvironment env = Environment(parallelism, jobParams);
+            AddQuery(query, COQueries.ParseAirQuality(COQueries.ReadAirQuality(env)));
+            env.execute("query " + query);
+        }
+        Print("sequential", queries, rows, parallelism, wall, cpu);
+
+        wall = System.nanoTime();
+        cpu = CpuNanos();
+        StreamExecutionEnvironment env = Environment(parallelism, jobParams);
+        DataStream<COQueries.AirQualityRecord> records = COQueries.ParseAirQuality(COQueries.ReadAirQuality(env));
+        for (String query : queries) {
+            AddQuery(query, records);
+        }
+        env.execute("shared scan");
+        Print("shared", queries, rows, parallelism, wall, cpu);
+    }
+
+    private static StreamExecutionEnvironment Environment(int parallelism, ParameterTool params) {
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(parallelism);
+        env.getConfig().setGlobalJobParameters(params);
+        return env;
+    }
+
+    private static void AddQuery(String query, DataStream<COQueries.AirQualityRecord> records) {
+        switch (query.trim()) {
+            case "1":
+                COQueries.Query1Plan(records).addSink(new DiscardingSink<>());
+                break;
+            case "2":
+                COQueries.Query2Plan(records).addSink(new DiscardingSink<>());
+                break;
+            case "4":
+                COQueries.Query4Plan(records).addSink(new DiscardingSink<>());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown query " + query);
+        }
+    }
+
+    private static long CpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static void Print(String mode, String[] queries, long rows, int parallelism, long wallStart, long cpuStart) {
+        System.out.printf("%s,%s,%d,%d,%d,%d%n", mode, String.join(" ", queries), rows, parallelism,
+                (System.nanoTime() - wallStart) / 1_000_000, (CpuNanos() - cpuStart) / 1_000_000);
+    }
+}
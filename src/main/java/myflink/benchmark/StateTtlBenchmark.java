@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.StreamingJob;
+import myflink.metrics.CheckpointStatsReporter;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long run of a word count example on the synthetic input with a large, slowly covered vocabulary, once without
+ * and once with the state ttl of --ttl millis, for every backend. Every --sample millis it prints the size and
+ * duration of the latest checkpoint: without ttl both keep growing with the words seen so far, with ttl they
+ * level off at the words seen within the ttl.
+ *
+ * <p>Example: {@code --e 402 --backends filesystem,rocksdb --ttl 60000 --rate 20000 --minutes 15}
+ */
+public class StateTtlBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int example = params.getInt("e", 402);
+        long ttl = params.getLong("ttl", 60_000);
+        long rate = params.getLong("rate", 20_000);
+        long minutes = params.getLong("minutes", 15);
+
+        System.out.println("example,backend,ttl,seconds,checkpoints,checkpointSizeBytes,checkpointDurationMs");
+        for (String backend : params.get("backends", "filesystem,rocksdb,ndb").split(",")) {
+            for (long runTtl : new long[]{0, ttl}) {
+                Map<String, String> run = new HashMap<>(params.toMap());
+                run.put("input", "synthetic");
+                run.put("sink", "blackhole");
+                run.put("sb", backend);
+                run.put("ttl", String.valueOf(runTtl));
+                run.put("rate", String.valueOf(rate));
+                run.put("lines", String.valueOf(rate * 60 * minutes));
+                run.putIfAbsent("vocabulary", "50000000");
+                ParameterTool jobParams = ParameterTool.fromMap(run);
+
+                Configuration config = StreamingJob.CreateConfiguration(jobParams);
+                StreamingJob.EnableCheckpointStatsLogging(config);
+                StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(1, config);
+                StreamingJob.ConfigureCheckpointing(env, params.getLong("ci", 10_000));
+                env.getConfig().setGlobalJobParameters(jobParams);
+
+                CheckpointStatsReporter.reset();
+                long start = System.nanoTime();
+                ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+                sampler.scheduleAtFixedRate(() -> {
+                    Map<String, Long> checkpoint = CheckpointStatsReporter.latest();
+                    System.out.printf("%d,%s,%d,%d,%d,%d,%d%n", example, backend, runTtl,
+                            (System.nanoTime() - start) / 1_000_000_000L,
+                            checkpoint.getOrDefault(CheckpointStatsReporter.COMPLETED, 0L),
+                            checkpoint.getOrDefault(CheckpointStatsReporter.SIZE, 0L),
+                            checkpoint.getOrDefault(CheckpointStatsReporter.DURATION, 0L));
+                }, 0, params.getLong("sample", 30_000), TimeUnit.MILLISECONDS);
+                try {
+                    StreamingJob.RunExample(example, env);
+                } catch (Exception e) {
+                    //e.g. no NDB cluster reachable, keep the other runs going
+                    System.out.println(example + "," + backend + "," + runTtl + ",error " + e.getMessage());
+                } finally {
+                    sampler.shutdownNow();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.TwitterStreaming;
+import myflink.operators.WindowedTopK;
+import myflink.util.SpaceSaving;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.windowing.ProcessAllWindowFunction;
+import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Top k hashtags per event time window over a recorded tweet file (--input, generated with
+ * {@link TweetFileGenerator} when missing), read as fast as possible:
+ * <ul>
+ *     <li>naive: count per hashtag and window, then one non-parallel window sorting all counts</li>
+ *     <li>exact: {@link WindowedTopK} with exact bucket counts</li>
+ *     <li>sketch: {@link WindowedTopK} with space-saving buckets of --sketch counters</li>
+ * </ul>
+ * Prints the throughput and, for every variant, the share of the naive top k it found (recall).
+ */
+public class TopKReplayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long tweets = params.getLong("tweets", 10_000_000L);
+        File input = new File(params.get("input", "/tmp/tweets-" + tweets + ".json"));
+        int parallelism = params.getInt("p", Runtime.getRuntime().availableProcessors());
+        int k = params.getInt("k", 10);
+        int sketch = params.getInt("sketch", 1000);
+
+        if (!input.exists()) {
+            TweetFileGenerator.Generate(input, tweets, 1_000_000, 1_000_000, 6000);
+        }
+
+        Map<Long, Set<String>> reference = null;
+        System.out.println("variant,tweets,parallelism,millis,tweetsPerSecond,windows,recall");
+        for (String variant : params.get("variants", "naive,exact,sketch").split(",")) {
+            StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(parallelism);
+            DataStream<String> hashtags = env.readTextFile(input.getAbsolutePath())
+                    .flatMap(new TwitterStreaming.TweetParser())
+                    .assignTimestampsAndWatermarks(WatermarkStrategy
+                            .<TwitterStreaming.Tweet>forBoundedOutOfOrderness(Duration.ofSeconds(5))
+                            .withTimestampAssigner((tweet, previous) -> tweet.timestampMs))
+                    .flatMap(new TwitterStreaming.HashtagExtractor());
+
+            TumblingEventTimeWindows window = TumblingEventTimeWindows.of(Time.seconds(10));
+            DataStream<WindowedTopK.Result> top;
+            switch (variant) {
+                case "naive":
+                    top = NaiveTopK(hashtags, window, k);
+                    break;
+                case "exact":
+                    top = WindowedTopK.apply(hashtags, window, k, parallelism * 4, 0, true, 0);
+                    break;
+                case "sketch":
+                    top = WindowedTopK.apply(hashtags, window, k, parallelism * 4, sketch, true, 0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown variant " + variant);
+            }
+
+            long start = System.nanoTime();
+            Map<Long, Set<String>> results = new HashMap<>();
+            top.executeAndCollect("top " + k + " " + variant).forEachRemaining(result -> {
+                Set<String> keys = new HashSet<>();
+                result.top.forEach(counter -> keys.add(counter.key));
+                results.put(result.windowEnd, keys);
+            });
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            if (reference == null) {
+                reference = results;
+            }
+            System.out.printf("%s,%d,%d,%d,%.0f,%d,%.3f%n", variant, tweets, parallelism, millis,
+                    tweets * 1000.0 / millis, results.size(), Recall(reference, results));
+        }
+    }
+
+    static DataStream<WindowedTopK.Result> NaiveTopK(DataStream<String> hashtags, TumblingEventTimeWindows window, int k) {
+        return hashtags
+                .keyBy(hashtag -> hashtag)
+                .window(window)
+                .aggregate(new AggregateFunction<String, Long, Long>() {
+                    @Override
+                    public Long createAccumulator() {
+                        return 0L;
+                    }
+
+                    @Override
+                    public Long add(String value, Long count) {
+                        return count + 1;
+                    }
+
+                    @Override
+                    public Long getResult(Long count) {
+                        return count;
+                    }
+
+                    @Override
+                    public Long merge(Long a, Long b) {
+                        return a + b;
+                    }
+                }, new ProcessWindowFunction<Long, Tuple2<String, Long>, String, TimeWindow>() {
+                    @Override
+                    public void process(String hashtag, Context context, Iterable<Long> counts, Collector<Tuple2<String, Long>> out) {
+                        out.collect(Tuple2.of(hashtag, counts.iterator().next()));
+                    }
+                })
+                .windowAll(window)
+                .process(new ProcessAllWindowFunction<Tuple2<String, Long>, WindowedTopK.Result, TimeWindow>() {
+                    @Override
+                    public void process(Context context, Iterable<Tuple2<String, Long>> counts, Collector<WindowedTopK.Result> out) {
+                        List<SpaceSaving.Counter> all = new ArrayList<>();
+                        for (Tuple2<String, Long> count : counts) {
+                            all.add(new SpaceSaving.Counter(count.f0, count.f1, 0));
+                        }
+                        out.collect(new WindowedTopK.Result(context.window().getEnd(), SpaceSaving.top(all, k)));
+                    }
+                });
+    }
+
+    static double Recall(Map<Long, Set<String>> reference, Map<Long, Set<String>> results) {
+        long expected = 0;
+        long found = 0;
+        for (Map.Entry<Long, Set<String>> window : reference.entrySet()) {
+            expected += window.getValue().size();
+            for (String key : results.getOrDefault(window.getKey(), new HashSet<>())) {
+                if (window.getValue().contains(key)) {
+                    found++;
+                }
+            }
+        }
+        return expected == 0 ? 1 : (double) found / expected;
+    }
+}
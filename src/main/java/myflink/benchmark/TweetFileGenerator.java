@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes tweets in the JSON layout of the streaming API, one per line, as a stand-in for a recorded firehose
+ * sample. Hashtags and users follow a Zipf distribution, timestamp_ms advances at --rate tweets per second.
+ * A file name ending in .gz is written gzip compressed.
+ */
+public class TweetFileGenerator {
+
+    private static final String[] SOURCES = {
+            "<a href=\\\"http://twitter.com/download/android\\\" rel=\\\"nofollow\\\">Twitter for Android</a>",
+            "<a href=\\\"http://twitter.com/download/iphone\\\" rel=\\\"nofollow\\\">Twitter for iPhone</a>",
+            "<a href=\\\"https://mobile.twitter.com\\\" rel=\\\"nofollow\\\">Twitter Web App</a>",
+            "<a href=\\\"https://about.twitter.com/products/tweetdeck\\\" rel=\\\"nofollow\\\">TweetDeck</a>"};
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        Generate(new File(params.get("output", "/tmp/tweets.json")), params.getLong("tweets", 10_000_000L),
+                params.getInt("hashtags", 1_000_000), params.getInt("users", 1_000_000), params.getInt("rate", 6000));
+    }
+
+    public static void Generate(File file, long tweets, int hashtags, int users, int rate) throws IOException {
+        SplittableRandom random = new SplittableRandom(11);
+        Zipf hashtagRanks = new Zipf(hashtags, 1.1);
+        Zipf userRanks = new Zipf(users, 0.9);
+        long start = 1_600_000_000_000L;
+
+        OutputStream stream = new FileOutputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            stream = new GZIPOutputStream(stream, 1 << 16);
+        }
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 20)) {
+            StringBuilder line = new StringBuilder(512);
+            for (long i = 0; i < tweets; i++) {
+                int user = userRanks.next(random);
+                int tags = random.nextInt(10) < 6 ? 0 : 1 + random.nextInt(3);
+
+                line.setLength(0);
+                line.append("{\"created_at\":\"Sun Sep 13 12:26:40 +0000 2020\",\"id\":").append(i)
+                        .append(",\"text\":\"synthetic tweet ").append(i);
+                for (int t = 0; t < tags; t++) {
+                    line.append(" #tag").append(hashtagRanks.next(random));
+                }
+                line.append("\",\"source\":\"").append(SOURCES[random.nextInt(SOURCES.length)])
+                        .append("\",\"user\":{\"id\":").append(user)
+                        .append(",\"name\":\"User ").append(user)
+                        .append("\",\"screen_name\":\"user").append(user)
+                        .append("\",\"lang\":null},\"entities\":{\"hashtags\":[");
+                // the entities repeat the hashtags of the text, as in the real payload
+                String text = line.substring(line.indexOf("\"text\":\"") + 8, line.indexOf("\",\"source\""));
+                int from = text.indexOf('#');
+                for (int t = 0; from >= 0; t++) {
+                    int to = text.indexOf(' ', from);
+                    to = to < 0 ? text.length() : to;
+                    if (t > 0) {
+                        line.append(',');
+                    }
+                    line.append("{\"text\":\"").append(text, from + 1, to)
+                            .append("\",\"indices\":[").append(from).append(',').append(to).append("]}");
+                    from = text.indexOf('#', to);
+                }
+                line.append("]},\"lang\":\"en\",\"timestamp_ms\":\"").append(start + i * 1000 / rate).append("\"}\n");
+                out.append(line);
+            }
+        }
+    }
+
+    /**
+     * Zipf ranks 0 .. n - 1 by binary search over the cumulative distribution.
+     */
+    static class Zipf {
+        private final double[] cdf;
+
+        Zipf(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / Math.pow(i + 1, exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+        }
+
+        int next(SplittableRandom random) {
+            int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+        }
+    }
+}
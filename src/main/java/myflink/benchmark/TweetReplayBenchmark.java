@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.benchmark;
+
+import myflink.TwitterStreaming;
+import myflink.sources.ReplayTweetSource;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * TweetParser and the windowed source count of TwitterStreaming fed by {@link ReplayTweetSource} at multiples of
+ * the recorded rate (--speeds, 0 for as fast as possible). The recording (--input) is generated by
+ * {@link TweetFileGenerator} at --rate tweets per second, roughly the firehose sample, when it is missing.
+ *
+ * <p>Prints the achieved rate next to the target rate, and the single threaded parse cost of TweetParser.
+ */
+public class TweetReplayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        long tweets = params.getLong("tweets", 2_000_000L);
+        int rate = params.getInt("rate", 6000);
+        File input = new File(params.get("input", "/tmp/tweets-" + tweets + ".json.gz"));
+        int parallelism = params.getInt("p", Runtime.getRuntime().availableProcessors());
+
+        if (!input.exists()) {
+            TweetFileGenerator.Generate(input, tweets, 1_000_000, 1_000_000, rate);
+        }
+
+        System.out.printf("parser: %.0f ns per tweet%n", ParseNanos(input, 200_000));
+
+        System.out.println("speed,tweets,parallelism,millis,targetPerSecond,tweetsPerSecond");
+        for (String speed : params.get("speeds", "10,100,0").split(",")) {
+            StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(parallelism);
+            ParameterTool source = ParameterTool.fromArgs(new String[]{
+                    "--input", input.getAbsolutePath(), "--speed", speed, "--splitmb", params.get("splitmb", "64")});
+
+            TwitterStreaming.SourceCounts(
+                    env.addSource(ReplayTweetSource.fromParameters(source))
+                            .flatMap(new TwitterStreaming.TweetParser())
+                            .assignTimestampsAndWatermarks(WatermarkStrategy
+                                    .<TwitterStreaming.Tweet>forBoundedOutOfOrderness(Duration.ofSeconds(5))
+                                    .withTimestampAssigner((tweet, previous) -> tweet.timestampMs)),
+                    TumblingEventTimeWindows.of(Time.seconds(10)))
+                    .addSink(new DiscardingSink<>());
+
+            long start = System.nanoTime();
+            env.execute("replay x" + speed);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            double target = Double.parseDouble(speed) * rate;
+            System.out.printf("%s,%d,%d,%d,%s,%.0f%n", speed, tweets, parallelism, millis,
+                    target > 0 ? String.format("%.0f", target) : "max", tweets * 1000.0 / millis);
+        }
+    }
+
+    private static double ParseNanos(File input, int lines) throws Exception {
+        List<String> sample = new ArrayList<>(lines);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                input.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(input)) : new FileInputStream(input),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while (sample.size() < lines && (line = in.readLine()) != null) {
+                sample.add(line);
+            }
+        }
+
+        long parsed = 0;
+        //first pass warms up the JIT
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (String line : sample) {
+                if (TwitterStreaming.Tweet.fromString(line) != null) {
+                    parsed++;
+                }
+            }
+            if (pass == 1) {
+                return (System.nanoTime() - start) / (double) sample.size();
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.columnar;
+
+/**
+ * The columns of the columnar air quality file, with their position in the CSV rows and their type. Strings are
+ * stored as int codes into a dictionary at the end of the file.
+ */
+public enum AirQualityColumn {
+    STATE_CODE(0, Type.INT),
+    COUNTY_CODE(1, Type.INT),
+    ARITHMETIC_MEAN(16, Type.DOUBLE),
+    DATE(28, Type.STRING);
+
+    public enum Type {
+        INT(4), DOUBLE(8), STRING(4);
+
+        final int width;
+
+        Type(int width) {
+            this.width = width;
+        }
+    }
+
+    public final int csvIndex;
+    public final Type type;
+
+    AirQualityColumn(int csvIndex, Type type) {
+        this.csvIndex = csvIndex;
+        this.type = type;
+    }
+}
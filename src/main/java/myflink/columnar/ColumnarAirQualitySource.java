@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.columnar;
+
+import myflink.COQueries;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+
+import java.io.File;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a columnar air quality file as {@link COQueries.AirQualityRecord}s. Block i is read by subtask
+ * i % parallelism; a block whose zone maps rule out the predicates is skipped without touching its data, in the
+ * other blocks the predicates are checked per row. Only the projected columns (and the ones the predicates need)
+ * are mapped and decoded, the other fields of the records stay at their defaults.
+ *
+ * <p>The rows emitted per block are checkpointed in union state, like the splits of the replay source.
+ */
+public class ColumnarAirQualitySource extends RichParallelSourceFunction<COQueries.AirQualityRecord>
+        implements CheckpointedFunction {
+
+    private static final int DONE = Integer.MAX_VALUE;
+
+    private final String path;
+    private final EnumSet<AirQualityColumn> projection;
+    private final List<RangePredicate> predicates;
+
+    private volatile boolean running = true;
+    private final Map<Integer, Integer> progress = new HashMap<>();
+    private transient ListState<Tuple2<Integer, Integer>> progressState;
+
+    public ColumnarAirQualitySource(String path, EnumSet<AirQualityColumn> projection, List<RangePredicate> predicates) {
+        this.path = path;
+        this.projection = projection;
+        this.predicates = new ArrayList<>(predicates);
+    }
+
+    @Override
+    public void run(SourceContext<COQueries.AirQualityRecord> ctx) throws Exception {
+        int subtask = getRuntimeContext().getIndexOfThisSubtask();
+        int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+
+        EnumSet<AirQualityColumn> read = EnumSet.copyOf(projection);
+        for (RangePredicate predicate : predicates) {
+            read.add(predicate.column);
+        }
+
+        try (ColumnarReader reader = new ColumnarReader(new File(path))) {
+            for (int block = subtask; block < reader.getBlockCount() && running; block += parallelism) {
+                int done = progress.getOrDefault(block, 0);
+                if (done == DONE) {
+                    continue;
+                }
+                if (!reader.mayMatch(block, predicates)) {
+                    synchronized (ctx.getCheckpointLock()) {
+                        progress.put(block, DONE);
+                    }
+                    continue;
+                }
+
+                //only the columns of the filter and the projection are read
+                IntBuffer states = read.contains(AirQualityColumn.STATE_CODE)
+                        ? reader.ints(block, AirQualityColumn.STATE_CODE) : null;
+                IntBuffer counties = read.contains(AirQualityColumn.COUNTY_CODE)
+                        ? reader.ints(block, AirQualityColumn.COUNTY_CODE) : null;
+                DoubleBuffer means = read.contains(AirQualityColumn.ARITHMETIC_MEAN)
+                        ? reader.doubles(block, AirQualityColumn.ARITHMETIC_MEAN) : null;
+                IntBuffer dates = read.contains(AirQualityColumn.DATE)
+                        ? reader.ints(block, AirQualityColumn.DATE) : null;
+
+                int rows = reader.getRows(block);
+                for (int r = done; r < rows && running; r++) {
+                    if (!matches(r, states, counties, means)) {
+                        continue;
+                    }
+                    COQueries.AirQualityRecord record = new COQueries.AirQualityRecord();
+                    if (states != null) {
+                        record.StateCode = states.get(r);
+                    }
+                    if (counties != null) {
+                        record.CountyCode = counties.get(r);
+                    }
+                    if (means != null) {
+                        record.ArithmeticMean = means.get(r);
+                    }
+                    if (dates != null) {
+                        record.Date = reader.decode(dates.get(r));
+                    }
+                    synchronized (ctx.getCheckpointLock()) {
+                        ctx.collect(record);
+                        progress.put(block, r + 1);
+                    }
+                }
+                if (running) {
+                    synchronized (ctx.getCheckpointLock()) {
+                        progress.put(block, DONE);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean matches(int row, IntBuffer states, IntBuffer counties, DoubleBuffer means) {
+        for (RangePredicate predicate : predicates) {
+            double value;
+            switch (predicate.column) {
+                case STATE_CODE:
+                    value = states.get(row);
+                    break;
+                case COUNTY_CODE:
+                    value = counties.get(row);
+                    break;
+                default:
+                    value = means.get(row);
+                    break;
+            }
+            if (!predicate.matches(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        progressState.clear();
+        for (Map.Entry<Integer, Integer> block : progress.entrySet()) {
+            progressState.add(Tuple2.of(block.getKey(), block.getValue()));
+        }
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        progressState = context.getOperatorStateStore().getUnionListState(new ListStateDescriptor<>(
+                "columnarBlockProgress", TypeInformation.of(new TypeHint<Tuple2<Integer, Integer>>() {})));
+
+        if (context.isRestored()) {
+            int subtask = getRuntimeContext().getIndexOfThisSubtask();
+            int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+            for (Tuple2<Integer, Integer> block : progressState.get()) {
+                if (block.f0 % parallelism == subtask) {
+                    progress.put(block.f0, block.f1);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.columnar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Memory mapped access to a file of {@link ColumnarWriter}. The index and the dictionary are read on open, the
+ * column chunks of a block are mapped only when a block is read, so the file may be larger than one mapping.
+ */
+public class ColumnarReader implements AutoCloseable {
+
+    private static final AirQualityColumn[] COLUMNS = AirQualityColumn.values();
+
+    private final FileChannel channel;
+    private final int[] blockRows;
+    private final long[][] offsets;
+    private final double[][] zoneMaps;
+    private final String[] dictionary;
+
+    public ColumnarReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        long size = channel.size();
+
+        ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - ColumnarWriter.FOOTER_BYTES,
+                ColumnarWriter.FOOTER_BYTES);
+        long dictionaryOffset = footer.getLong();
+        long indexOffset = footer.getLong();
+        if (footer.getInt() != ColumnarWriter.MAGIC) {
+            throw new IOException(file + " is not a columnar air quality file");
+        }
+
+        ByteBuffer dictionaryBuffer = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset,
+                indexOffset - dictionaryOffset);
+        dictionary = new String[dictionaryBuffer.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[dictionaryBuffer.getInt()];
+            dictionaryBuffer.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+                size - ColumnarWriter.FOOTER_BYTES - indexOffset);
+        int blocks = index.getInt();
+        blockRows = new int[blocks];
+        offsets = new long[blocks][COLUMNS.length];
+        zoneMaps = new double[blocks][COLUMNS.length * 2];
+        for (int b = 0; b < blocks; b++) {
+            blockRows[b] = index.getInt();
+            for (int c = 0; c < COLUMNS.length; c++) {
+                offsets[b][c] = index.getLong();
+                zoneMaps[b][2 * c] = index.getDouble();
+                zoneMaps[b][2 * c + 1] = index.getDouble();
+            }
+        }
+    }
+
+    public int getBlockCount() {
+        return blockRows.length;
+    }
+
+    public int getRows(int block) {
+        return blockRows[block];
+    }
+
+    public String decode(int code) {
+        return dictionary[code];
+    }
+
+    /**
+     * False when the zone maps of the block rule out a match of one of the predicates.
+     */
+    public boolean mayMatch(int block, List<RangePredicate> predicates) {
+        for (RangePredicate predicate : predicates) {
+            int c = predicate.column.ordinal();
+            if (!predicate.overlaps(zoneMaps[block][2 * c], zoneMaps[block][2 * c + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public IntBuffer ints(int block, AirQualityColumn column) throws IOException {
+        return map(block, column).asIntBuffer();
+    }
+
+    public DoubleBuffer doubles(int block, AirQualityColumn column) throws IOException {
+        return map(block, column).asDoubleBuffer();
+    }
+
+    private MappedByteBuffer map(int block, AirQualityColumn column) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offsets[block][column.ordinal()],
+                (long) blockRows[block] * column.type.width);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.columnar;
+
+import myflink.COQueries;
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the air quality CSV once into the columnar file read by {@link ColumnarReader}:
+ * <pre>
+ * header     magic, rows per block, column count
+ * blocks     per block and column the values, int, double or dictionary code
+ * dictionary count, then length and UTF-8 bytes of every string
+ * index      block count, then per block the row count and per column offset, min and max (the zone map)
+ * footer     dictionary offset, index offset, magic
+ * </pre>
+ * Zone maps only help when the file is clustered by the filtered column, as the EPA files are by state and
+ * county.
+ */
+public class ColumnarWriter implements AutoCloseable {
+
+    static final int MAGIC = 0x41514331; //AQC1
+    static final int FOOTER_BYTES = 8 + 8 + 4;
+
+    private static final AirQualityColumn[] COLUMNS = AirQualityColumn.values();
+
+    private final DataOutputStream out;
+    private final int blockRows;
+    private long position;
+
+    private final int[] stateCodes;
+    private final int[] countyCodes;
+    private final double[] means;
+    private final int[] dates;
+    private int rows;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> dictionaryEntries = new ArrayList<>();
+    private final List<long[]> blockOffsets = new ArrayList<>();
+    private final List<double[]> blockZoneMaps = new ArrayList<>();
+    private final List<Integer> blockRowCounts = new ArrayList<>();
+
+    public ColumnarWriter(File file, int blockRows) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+        this.blockRows = blockRows;
+        this.stateCodes = new int[blockRows];
+        this.countyCodes = new int[blockRows];
+        this.means = new double[blockRows];
+        this.dates = new int[blockRows];
+
+        out.writeInt(MAGIC);
+        out.writeInt(blockRows);
+        out.writeInt(COLUMNS.length);
+        position = 12;
+    }
+
+    /**
+     * --input CSV file, --output columnar file, --blockrows (65536).
+     */
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        Convert(new File(params.get("input", "src/main/resources/data.txt")),
+                new File(params.get("output", "src/main/resources/data.aqc")),
+                params.getInt("blockrows", 65536));
+    }
+
+    public static void Convert(File csv, File columnar, int blockRows) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(csv), 1 << 20);
+             ColumnarWriter writer = new ColumnarWriter(columnar, blockRows)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                writer.add(COQueries.AirQualityRecord.fromString(line));
+            }
+        }
+    }
+
+    public void add(COQueries.AirQualityRecord record) throws IOException {
+        stateCodes[rows] = record.StateCode;
+        countyCodes[rows] = record.CountyCode;
+        means[rows] = record.ArithmeticMean;
+        dates[rows] = dictionary.computeIfAbsent(record.Date, date -> {
+            dictionaryEntries.add(date);
+            return dictionaryEntries.size() - 1;
+        });
+        if (++rows == blockRows) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        long[] offsets = new long[COLUMNS.length];
+        double[] zoneMap = new double[COLUMNS.length * 2];
+        for (AirQualityColumn column : COLUMNS) {
+            int c = column.ordinal();
+            offsets[c] = position;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int r = 0; r < rows; r++) {
+                double value;
+                switch (column) {
+                    case STATE_CODE:
+                        out.writeInt(stateCodes[r]);
+                        value = stateCodes[r];
+                        break;
+                    case COUNTY_CODE:
+                        out.writeInt(countyCodes[r]);
+                        value = countyCodes[r];
+                        break;
+                    case ARITHMETIC_MEAN:
+                        out.writeDouble(means[r]);
+                        value = means[r];
+                        break;
+                    default:
+                        out.writeInt(dates[r]);
+                        value = dates[r];
+                        break;
+                }
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            zoneMap[2 * c] = min;
+            zoneMap[2 * c + 1] = max;
+            position += (long) rows * column.type.width;
+        }
+        blockOffsets.add(offsets);
+        blockZoneMaps.add(zoneMap);
+        blockRowCounts.add(rows);
+        rows = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushBlock();
+
+        long dictionaryOffset = position;
+        out.writeInt(dictionaryEntries.size());
+        position += 4;
+        for (String entry : dictionaryEntries) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            position += 4 + bytes.length;
+        }
+
+        long indexOffset = position;
+        out.writeInt(blockRowCounts.size());
+        for (int b = 0; b < blockRowCounts.size(); b++) {
+            out.writeInt(blockRowCounts.get(b));
+            for (int c = 0; c < COLUMNS.length; c++) {
+                out.writeLong(blockOffsets.get(b)[c]);
+                out.writeDouble(blockZoneMaps.get(b)[2 * c]);
+                out.writeDouble(blockZoneMaps.get(b)[2 * c + 1]);
+            }
+        }
+
+        out.writeLong(dictionaryOffset);
+        out.writeLong(indexOffset);
+        out.writeInt(MAGIC);
+        out.close();
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.columnar;
+
+import java.io.Serializable;
+
+/**
+ * min &lt;= column &lt;= max, on the numeric value of INT and DOUBLE columns. parse("county_code=31") or
+ * parse("state_code=1..10") for the command line.
+ */
+public class RangePredicate implements Serializable {
+
+    public final AirQualityColumn column;
+    public final double min;
+    public final double max;
+
+    public RangePredicate(AirQualityColumn column, double min, double max) {
+        if (column.type == AirQualityColumn.Type.STRING) {
+            throw new IllegalArgumentException("Range predicates on dictionary encoded " + column + " are not supported");
+        }
+        this.column = column;
+        this.min = min;
+        this.max = max;
+    }
+
+    public static RangePredicate parse(String predicate) {
+        String[] parts = predicate.split("=", 2);
+        AirQualityColumn column = AirQualityColumn.valueOf(parts[0].trim().toUpperCase());
+        String[] range = parts[1].split("\\.\\.", 2);
+        double min = Double.parseDouble(range[0].trim());
+        double max = range.length > 1 ? Double.parseDouble(range[1].trim()) : min;
+        return new RangePredicate(column, min, max);
+    }
+
+    /**
+     * Whether a block with the given zone map can hold matching rows.
+     */
+    public boolean overlaps(double blockMin, double blockMax) {
+        return blockMax >= min && blockMin <= max;
+    }
+
+    public boolean matches(double value) {
+        return value >= min && value <= max;
+    }
+
+    @Override
+    public String toString() {
+        return column + " in [" + min + ", " + max + "]";
+    }
+}
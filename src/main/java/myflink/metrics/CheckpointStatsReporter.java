@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.metrics;
+
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Metric;
+import org.apache.flink.metrics.MetricConfig;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.reporter.MetricReporter;
+import org.apache.flink.metrics.reporter.Scheduled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logs one line per completed checkpoint with its duration, size and the barrier alignment time / start delay
+ * of the slowest task.
+ *
+ * <p>Enable it with
+ * <pre>
+ * metrics.reporter.checkpointstats.class: myflink.metrics.CheckpointStatsReporter
+ * metrics.reporter.checkpointstats.interval: 1 SECONDS
+ * </pre>
+ * The latest values are also kept in a static map, so benchmarks running on the local mini cluster can read them
+ * with {@link #latest()}.
+ */
+public class CheckpointStatsReporter implements MetricReporter, Scheduled {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointStatsReporter.class);
+
+    public static final String COMPLETED = "numberOfCompletedCheckpoints";
+    public static final String DURATION = "lastCheckpointDuration";
+    public static final String SIZE = "lastCheckpointSize";
+    public static final String ALIGNMENT = "checkpointAlignmentTime";
+    public static final String START_DELAY = "checkpointStartDelayNanos";
+
+    private static final Map<String, Long> LATEST = new ConcurrentHashMap<>();
+
+    private final Map<String, Gauge<?>> jobGauges = new ConcurrentHashMap<>();
+    private final Map<String, Gauge<?>> alignmentGauges = new ConcurrentHashMap<>();
+    private final Map<String, Gauge<?>> startDelayGauges = new ConcurrentHashMap<>();
+
+    private long reportedCheckpoints;
+
+    /**
+     * Values of the last reported checkpoint, keyed by the metric names of this class.
+     */
+    public static Map<String, Long> latest() {
+        return new HashMap<>(LATEST);
+    }
+
+    public static void reset() {
+        LATEST.clear();
+    }
+
+    @Override
+    public void open(MetricConfig config) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void notifyOfAddedMetric(Metric metric, String metricName, MetricGroup group) {
+        if (!(metric instanceof Gauge)) {
+            return;
+        }
+        Gauge<?> gauge = (Gauge<?>) metric;
+        switch (metricName) {
+            case COMPLETED:
+            case DURATION:
+            case SIZE:
+                jobGauges.put(metricName, gauge);
+                break;
+            case ALIGNMENT:
+                alignmentGauges.put(group.getMetricIdentifier(metricName), gauge);
+                break;
+            case START_DELAY:
+                startDelayGauges.put(group.getMetricIdentifier(metricName), gauge);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void notifyOfRemovedMetric(Metric metric, String metricName, MetricGroup group) {
+        switch (metricName) {
+            case COMPLETED:
+            case DURATION:
+            case SIZE:
+                jobGauges.remove(metricName, metric);
+                break;
+            case ALIGNMENT:
+                alignmentGauges.remove(group.getMetricIdentifier(metricName));
+                break;
+            case START_DELAY:
+                startDelayGauges.remove(group.getMetricIdentifier(metricName));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void report() {
+        long completed = value(jobGauges.get(COMPLETED));
+        if (completed <= reportedCheckpoints) {
+            //new job on the same cluster starts counting from 0 again
+            reportedCheckpoints = Math.min(reportedCheckpoints, completed);
+            return;
+        }
+        reportedCheckpoints = completed;
+
+        long duration = value(jobGauges.get(DURATION));
+        long size = value(jobGauges.get(SIZE));
+        long alignment = max(alignmentGauges);
+        long startDelay = max(startDelayGauges);
+
+        LATEST.put(COMPLETED, completed);
+        LATEST.put(DURATION, duration);
+        LATEST.put(SIZE, size);
+        LATEST.put(ALIGNMENT, alignment);
+        LATEST.put(START_DELAY, startDelay);
+
+        LOG.info("checkpoint #{}: duration {} ms, size {} bytes, max alignment {} ms, max start delay {} ms",
+                completed, duration, size, alignment / 1_000_000, startDelay / 1_000_000);
+    }
+
+    private static long max(Map<String, Gauge<?>> gauges) {
+        long max = 0;
+        for (Gauge<?> gauge : gauges.values()) {
+            max = Math.max(max, value(gauge));
+        }
+        return max;
+    }
+
+    private static long value(Gauge<?> gauge) {
+        if (gauge == null) {
+            return 0;
+        }
+        Object value = gauge.getValue();
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.metrics;
+
+/**
+ * Wall clock time in microseconds since the epoch, derived from System.nanoTime() and one epoch base per JVM, so
+ * a source and a sink in the same JVM stamp and measure latencies below a millisecond on the same clock.
+ *
+ * <p>Across JVMs the bases differ by the millisecond resolution of System.currentTimeMillis() plus the clock
+ * skew, so latencies measured on a cluster are only as exact as that.
+ */
+public final class LatencyClock {
+
+    /**
+     * Stamps below this value (2001-09-09 in microseconds, year 33658 in milliseconds) are taken as milliseconds.
+     */
+    public static final long MIN_MICROS = 1_000_000_000_000_000L;
+
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private LatencyClock() {
+    }
+
+    public static long nowMicros() {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+
+    /**
+     * The stamp in microseconds, whether it is one of this clock or a record timestamp in milliseconds, like the
+     * end of a window.
+     */
+    public static long toMicros(long stamp) {
+        return stamp < MIN_MICROS ? stamp * 1000 : stamp;
+    }
+}
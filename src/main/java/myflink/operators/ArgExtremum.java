@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.api.java.typeutils.TupleTypeInfo;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.streaming.api.functions.ProcessFunction;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.BoundedOneInput;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.util.Collector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The record with the largest or smallest value over all keys, like the state with the highest emission, in two
+ * stages so that only the second, tiny one runs with parallelism 1.
+ *
+ * <p>{@link #running} takes a stream of per key updates, like the output of a keyed reduce. Every subtask keeps
+ * the latest record of each of its keys and sends its local winner on whenever that changes, a single merge
+ * subtask keeps one candidate per local subtask and emits the global winner whenever that changes. As the
+ * latest value counts, a key whose value gets worse loses its place.
+ *
+ * <p>{@link #windowed} takes the results of a keyed window, which carry the window end as timestamp. Every
+ * subtask forwards its best record per window, the merge, keyed by the window end, emits the winner of a window
+ * once: with event time when the watermark passes the window, with processing time mergeDelayMillis after it.
+ */
+public class ArgExtremum {
+
+    /**
+     * Running winner over the latest update of every key. The updates of a key have to reach the same subtask,
+     * so apply it directly behind the keyed operator and pass the key selector of its keyBy, which is used to
+     * give every subtask its keys back when restoring with a different parallelism.
+     */
+    public static <T, K> DataStream<T> running(DataStream<T> updates,
+                                               KeySelector<T, K> keySelector,
+                                               RunningStatistics.ValueOf<T> valueOf,
+                                               boolean max) {
+        TypeInformation<T> type = updates.getType();
+        return updates
+                .process(new LocalRunningWinner<>(keySelector, valueOf, max, type),
+                        new TupleTypeInfo<>(BasicTypeInfo.INT_TYPE_INFO, BasicTypeInfo.INT_TYPE_INFO, type))
+                .name(max ? "Local argmax" : "Local argmin")
+                .keyBy(candidate -> 0, BasicTypeInfo.INT_TYPE_INFO)
+                .process(new MergeRunningWinners<>(valueOf, max, type), type)
+                .setParallelism(1)
+                .name(max ? "Global argmax" : "Global argmin");
+    }
+
+    /**
+     * Winner of every window, over window results with the window end as timestamp.
+     */
+    public static <T> DataStream<T> windowed(DataStream<T> windowResults,
+                                             RunningStatistics.ValueOf<T> valueOf,
+                                             boolean max,
+                                             boolean eventTime,
+                                             long mergeDelayMillis) {
+        TypeInformation<T> type = windowResults.getType();
+        return windowResults
+                .transform(max ? "Local window argmax" : "Local window argmin",
+                        new TupleTypeInfo<>(BasicTypeInfo.LONG_TYPE_INFO, type),
+                        new LocalWindowWinner<>(valueOf, max, eventTime ? 0 : Math.max(1, mergeDelayMillis / 2)))
+                .keyBy(candidate -> candidate.f0, BasicTypeInfo.LONG_TYPE_INFO)
+                .process(new MergeWindowWinners<>(valueOf, max, eventTime, mergeDelayMillis, type), type)
+                .name(max ? "Window argmax" : "Window argmin");
+    }
+
+    private static boolean Better(double value, double than, boolean max) {
+        return max ? value > than : value < than;
+    }
+
+    /**
+     * Keeps the latest record per key of this subtask and emits (subtask, parallelism, local winner) when the
+     * winner or its value changes.
+     */
+    public static class LocalRunningWinner<T, K> extends ProcessFunction<T, Tuple3<Integer, Integer, T>>
+            implements CheckpointedFunction {
+        private final KeySelector<T, K> keySelector;
+        private final RunningStatistics.ValueOf<T> valueOf;
+        private final boolean max;
+        private final TypeInformation<T> type;
+
+        private transient Map<K, T> latest;
+        private transient TypeSerializer<T> serializer;
+        private transient ListState<T> latestState;
+        private transient K winner;
+        private transient double winnerValue;
+        private transient boolean announced;
+
+        public LocalRunningWinner(KeySelector<T, K> keySelector, RunningStatistics.ValueOf<T> valueOf, boolean max,
+                                  TypeInformation<T> type) {
+            this.keySelector = keySelector;
+            this.valueOf = valueOf;
+            this.max = max;
+            this.type = type;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            serializer = type.createSerializer(getRuntimeContext().getExecutionConfig());
+        }
+
+        @Override
+        public void processElement(T update, Context ctx, Collector<Tuple3<Integer, Integer, T>> out)
+                throws Exception {
+            //the upstream operator may reuse its output object, keep a copy
+            T record = serializer.copy(update);
+            K key = keySelector.getKey(record);
+            double value = valueOf.value(record);
+            latest.put(key, record);
+
+            K previous = winner;
+            double previousValue = winnerValue;
+            if (winner == null || Better(value, winnerValue, max)) {
+                winner = key;
+                winnerValue = value;
+            } else if (winner.equals(key)) {
+                //the winner got worse, another key may be ahead now
+                findWinner();
+            }
+
+            if (!announced || !Objects.equals(previous, winner) || previousValue != winnerValue) {
+                announced = true;
+                out.collect(Tuple3.of(getRuntimeContext().getIndexOfThisSubtask(),
+                        getRuntimeContext().getNumberOfParallelSubtasks(), latest.get(winner)));
+            }
+        }
+
+        private void findWinner() throws Exception {
+            winner = null;
+            for (Map.Entry<K, T> entry : latest.entrySet()) {
+                double value = valueOf.value(entry.getValue());
+                if (winner == null || Better(value, winnerValue, max)) {
+                    winner = entry.getKey();
+                    winnerValue = value;
+                }
+            }
+        }
+
+        @Override
+        public void snapshotState(FunctionSnapshotContext context) throws Exception {
+            latestState.clear();
+            for (T record : latest.values()) {
+                latestState.add(record);
+            }
+        }
+
+        @Override
+        public void initializeState(FunctionInitializationContext context) throws Exception {
+            latestState = context.getOperatorStateStore().getUnionListState(
+                    new ListStateDescriptor<>("argExtremumLatest", type));
+            latest = new HashMap<>();
+
+            //every subtask gets the records of all subtasks back, keep those of the keys routed here now
+            int subtask = getRuntimeContext().getIndexOfThisSubtask();
+            int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+            int maxParallelism = getRuntimeContext().getMaxNumberOfParallelSubtasks();
+            for (T record : latestState.get()) {
+                K key = keySelector.getKey(record);
+                if (KeyGroupRangeAssignment.assignKeyToParallelOperator(key, maxParallelism, parallelism) == subtask) {
+                    latest.put(key, record);
+                }
+            }
+            if (!latest.isEmpty()) {
+                findWinner();
+            }
+        }
+    }
+
+    /**
+     * Keeps the latest candidate of every local subtask and emits the best of them when it changes. When the local
+     * parallelism changes the keys are redistributed, so the candidates sent before are dropped and every subtask
+     * announces its new winner with its next update.
+     */
+    public static class MergeRunningWinners<T> extends KeyedProcessFunction<Integer, Tuple3<Integer, Integer, T>, T> {
+        private final RunningStatistics.ValueOf<T> valueOf;
+        private final boolean max;
+        private final TypeInformation<T> type;
+
+        private transient MapState<Integer, T> candidates;
+        private transient ValueState<Integer> parallelism;
+        private transient ValueState<T> emitted;
+
+        public MergeRunningWinners(RunningStatistics.ValueOf<T> valueOf, boolean max, TypeInformation<T> type) {
+            this.valueOf = valueOf;
+            this.max = max;
+            this.type = type;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            candidates = getRuntimeContext().getMapState(
+                    new MapStateDescriptor<>("argExtremumCandidates", BasicTypeInfo.INT_TYPE_INFO, type));
+            parallelism = getRuntimeContext().getState(
+                    new ValueStateDescriptor<>("argExtremumParallelism", BasicTypeInfo.INT_TYPE_INFO));
+            emitted = getRuntimeContext().getState(new ValueStateDescriptor<>("argExtremumEmitted", type));
+        }
+
+        @Override
+        public void processElement(Tuple3<Integer, Integer, T> candidate, Context ctx, Collector<T> out)
+                throws Exception {
+            if (!candidate.f1.equals(parallelism.value())) {
+                //rescaled, the keys of the candidates sent before may be on other subtasks now
+                candidates.clear();
+                parallelism.update(candidate.f1);
+            }
+            candidates.put(candidate.f0, candidate.f2);
+
+            T best = null;
+            double bestValue = 0;
+            for (Map.Entry<Integer, T> entry : candidates.entries()) {
+                double value = valueOf.value(entry.getValue());
+                if (best == null || Better(value, bestValue, max)) {
+                    best = entry.getValue();
+                    bestValue = value;
+                }
+            }
+
+            if (best != null && !best.equals(emitted.value())) {
+                emitted.update(best);
+                out.collect(best);
+            }
+        }
+    }
+
+    /**
+     * Forwards (window end, best record) per window seen by this subtask. Sending a partial winner early is
+     * harmless, the merge takes the best of all candidates of a window. The buffer is flushed on every watermark,
+     * before every checkpoint barrier, at the end of the input and, if flushIntervalMillis is positive, on that
+     * interval, which event time jobs can leave at 0. So the operator needs no state of its own.
+     */
+    public static class LocalWindowWinner<T> extends AbstractStreamOperator<Tuple2<Long, T>>
+            implements OneInputStreamOperator<T, Tuple2<Long, T>>, BoundedOneInput {
+        private final RunningStatistics.ValueOf<T> valueOf;
+        private final boolean max;
+        private final long flushIntervalMillis;
+
+        private transient Map<Long, T> best;
+        private transient TypeSerializer<T> serializer;
+
+        public LocalWindowWinner(RunningStatistics.ValueOf<T> valueOf, boolean max, long flushIntervalMillis) {
+            this.valueOf = valueOf;
+            this.max = max;
+            this.flushIntervalMillis = flushIntervalMillis;
+            this.chainingStrategy = ChainingStrategy.ALWAYS;
+        }
+
+        @Override
+        public void open() throws Exception {
+            super.open();
+            best = new HashMap<>();
+            serializer = getOperatorConfig().getTypeSerializerIn(0, getUserCodeClassloader());
+            if (flushIntervalMillis > 0) {
+                scheduleFlush();
+            }
+        }
+
+        @Override
+        public void processElement(StreamRecord<T> element) throws Exception {
+            //window results carry window.maxTimestamp(), the window end is one more
+            long windowEnd = element.getTimestamp() + 1;
+            T current = best.get(windowEnd);
+            if (current == null || Better(valueOf.value(element.getValue()), valueOf.value(current), max)) {
+                best.put(windowEnd, serializer.copy(element.getValue()));
+            }
+        }
+
+        @Override
+        public void processWatermark(Watermark mark) throws Exception {
+            //the candidates must reach the merge before the watermark that fires it
+            flush();
+            super.processWatermark(mark);
+        }
+
+        @Override
+        public void prepareSnapshotPreBarrier(long checkpointId) throws Exception {
+            flush();
+        }
+
+        @Override
+        public void endInput() throws Exception {
+            flush();
+        }
+
+        private void flush() {
+            for (Map.Entry<Long, T> entry : best.entrySet()) {
+                output.collect(new StreamRecord<>(Tuple2.of(entry.getKey(), entry.getValue()), entry.getKey() - 1));
+            }
+            best.clear();
+        }
+
+        private void scheduleFlush() {
+            long now = getProcessingTimeService().getCurrentProcessingTime();
+            getProcessingTimeService().registerTimer(now + flushIntervalMillis, timestamp -> {
+                flush();
+                scheduleFlush();
+            });
+        }
+    }
+
+    /**
+     * Keeps the best candidate of a window and emits it once the candidates of all subtasks are in. Candidates
+     * arriving after that are dropped and counted: with event time the watermark is past their window, with
+     * processing time the window is marked as emitted for EMITTED_RETENTION_MILLIS.
+     */
+    public static class MergeWindowWinners<T> extends KeyedProcessFunction<Long, Tuple2<Long, T>, T> {
+        private static final long EMITTED_RETENTION_MILLIS = 10 * 60_000;
+
+        private final RunningStatistics.ValueOf<T> valueOf;
+        private final boolean max;
+        private final boolean eventTime;
+        private final long mergeDelayMillis;
+        private final TypeInformation<T> type;
+
+        private transient ValueState<T> best;
+        private transient ValueState<Boolean> emitted;
+        private transient Counter lateCandidates;
+
+        public MergeWindowWinners(RunningStatistics.ValueOf<T> valueOf, boolean max, boolean eventTime,
+                                  long mergeDelayMillis, TypeInformation<T> type) {
+            this.valueOf = valueOf;
+            this.max = max;
+            this.eventTime = eventTime;
+            this.mergeDelayMillis = mergeDelayMillis;
+            this.type = type;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            best = getRuntimeContext().getState(new ValueStateDescriptor<>("argExtremumWindowBest", type));
+            emitted = getRuntimeContext().getState(
+                    new ValueStateDescriptor<>("argExtremumWindowEmitted", BasicTypeInfo.BOOLEAN_TYPE_INFO));
+            lateCandidates = getRuntimeContext().getMetricGroup().counter("argExtremumLateCandidates");
+        }
+
+        @Override
+        public void processElement(Tuple2<Long, T> candidate, Context ctx, Collector<T> out) throws Exception {
+            boolean late = eventTime
+                    ? candidate.f0 - 1 <= ctx.timerService().currentWatermark()
+                    : emitted.value() != null;
+            if (late) {
+                //the winner of the window is out already, do not open it again
+                lateCandidates.inc();
+                return;
+            }
+            T current = best.value();
+            if (current == null) {
+                if (eventTime) {
+                    ctx.timerService().registerEventTimeTimer(candidate.f0 - 1);
+                } else {
+                    ctx.timerService().registerProcessingTimeTimer(candidate.f0 + mergeDelayMillis);
+                }
+            }
+            if (current == null || Better(valueOf.value(candidate.f1), valueOf.value(current), max)) {
+                best.update(candidate.f1);
+            }
+        }
+
+        @Override
+        public void onTimer(long timestamp, OnTimerContext ctx, Collector<T> out) throws Exception {
+            if (emitted.value() != null) {
+                emitted.clear();
+                return;
+            }
+            out.collect(best.value());
+            best.clear();
+            if (!eventTime) {
+                emitted.update(true);
+                ctx.timerService().registerProcessingTimeTimer(timestamp + EMITTED_RETENTION_MILLIS);
+            }
+        }
+    }
+}
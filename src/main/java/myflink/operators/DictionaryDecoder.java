@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import org.apache.flink.api.common.state.KeyedStateFunction;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ReadOnlyBroadcastState;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.functions.co.KeyedBroadcastProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.io.Serializable;
+
+/**
+ * Turns the ids of a {@link DictionaryEncoder} back into strings, with the dictionary entries broadcast to every
+ * subtask and kept in broadcast state. A record that overtakes its dictionary entry is parked in keyed state until
+ * the entry arrives.
+ */
+public class DictionaryDecoder<T, OUT> extends KeyedBroadcastProcessFunction<Integer, T, Tuple2<Integer, String>, OUT> {
+
+    public static final MapStateDescriptor<Integer, String> DICTIONARY = new MapStateDescriptor<>(
+            "dictionary", BasicTypeInfo.INT_TYPE_INFO, BasicTypeInfo.STRING_TYPE_INFO);
+
+    /**
+     * Builds the decoded record from the encoded one and the string of its id.
+     */
+    public interface Decode<T, OUT> extends Serializable {
+        OUT decode(T encoded, String value) throws Exception;
+    }
+
+    private final Decode<T, OUT> decode;
+    private final TypeInformation<T> encodedType;
+    private transient ListStateDescriptor<T> pendingDescriptor;
+    private transient ListState<T> pending;
+
+    public DictionaryDecoder(Decode<T, OUT> decode, TypeInformation<T> encodedType) {
+        this.decode = decode;
+        this.encodedType = encodedType;
+    }
+
+    /**
+     * Decodes the records keyed by the id extracted with idSelector.
+     */
+    public static <T, OUT> DataStream<OUT> apply(DataStream<T> encoded, KeySelector<T, Integer> idSelector,
+                                                 DataStream<Tuple2<Integer, String>> entries,
+                                                 Decode<T, OUT> decode, TypeInformation<OUT> outType) {
+        return encoded
+                .keyBy(idSelector)
+                .connect(entries.broadcast(DICTIONARY))
+                .process(new DictionaryDecoder<>(decode, encoded.getType()), outType)
+                .name("Dictionary decoder");
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        pendingDescriptor = new ListStateDescriptor<>("dictionaryPending", encodedType);
+        pending = getRuntimeContext().getListState(pendingDescriptor);
+    }
+
+    @Override
+    public void processElement(T record, ReadOnlyContext ctx, Collector<OUT> out) throws Exception {
+        ReadOnlyBroadcastState<Integer, String> dictionary = ctx.getBroadcastState(DICTIONARY);
+        String value = dictionary.get(ctx.getCurrentKey());
+        if (value != null) {
+            out.collect(decode.decode(record, value));
+        } else {
+            pending.add(record);
+        }
+    }
+
+    @Override
+    public void processBroadcastElement(Tuple2<Integer, String> entry, Context ctx, Collector<OUT> out) throws Exception {
+        ctx.getBroadcastState(DICTIONARY).put(entry.f0, entry.f1);
+
+        ctx.applyToKeyedState(pendingDescriptor, new KeyedStateFunction<Integer, ListState<T>>() {
+            @Override
+            public void process(Integer id, ListState<T> records) throws Exception {
+                if (id.equals(entry.f0)) {
+                    for (T record : records.get()) {
+                        out.collect(decode.decode(record, entry.f1));
+                    }
+                    records.clear();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+/**
+ * Replaces a low cardinality string key by a dense int id. Apply it keyed by the string; it emits
+ * (id, record) and every string seen for the first time as a (id, string) dictionary entry on
+ * {@link #NEW_ENTRIES}, which is broadcast to a {@link DictionaryDecoder} in front of the sink.
+ *
+ * <p>The id of a string lives in keyed state, so the dictionary is checkpointed with the job. Subtask i of p
+ * hands out base + i, base + i + p, base + i + 2p ..., without coordination. After a restore the base moves past
+ * the largest id of the checkpoint, so the ids stay unique when the parallelism changes.
+ */
+public class DictionaryEncoder<T> extends KeyedProcessFunction<String, T, Tuple2<Integer, T>>
+        implements CheckpointedFunction {
+
+    public static final OutputTag<Tuple2<Integer, String>> NEW_ENTRIES =
+            new OutputTag<>("dictionary-entries", TypeInformation.of(new TypeHint<Tuple2<Integer, String>>() {}));
+
+    private transient ValueState<Integer> id;
+    private transient ListState<Integer> largestIdState;
+
+    private int base;
+    private int sequence;
+    private int largestId = -1;
+    private transient Tuple2<Integer, T> encoded;
+
+    @Override
+    public void open(Configuration parameters) {
+        id = getRuntimeContext().getState(new ValueStateDescriptor<>("dictionaryId", BasicTypeInfo.INT_TYPE_INFO));
+        encoded = new Tuple2<>();
+    }
+
+    @Override
+    public void processElement(T record, Context ctx, Collector<Tuple2<Integer, T>> out) throws Exception {
+        Integer known = id.value();
+        if (known == null) {
+            int subtask = getRuntimeContext().getIndexOfThisSubtask();
+            int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+            known = base + subtask + sequence++ * parallelism;
+            largestId = Math.max(largestId, known);
+            id.update(known);
+            ctx.output(NEW_ENTRIES, Tuple2.of(known, ctx.getCurrentKey()));
+        }
+
+        encoded.f0 = known;
+        encoded.f1 = record;
+        out.collect(encoded);
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        largestIdState.clear();
+        largestIdState.add(largestId);
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        largestIdState = context.getOperatorStateStore().getUnionListState(
+                new ListStateDescriptor<>("dictionaryLargestId", BasicTypeInfo.INT_TYPE_INFO));
+
+        for (Integer restored : largestIdState.get()) {
+            largestId = Math.max(largestId, restored);
+        }
+        base = largestId + 1;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import myflink.util.OffHeapKeyedStateMap;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.base.IntSerializer;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.core.memory.DataInputViewStreamWrapper;
+import org.apache.flink.core.memory.DataOutputViewStreamWrapper;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.runtime.state.KeyGroupRangeAssignment;
+import org.apache.flink.runtime.state.KeyGroupStatePartitionStreamProvider;
+import org.apache.flink.runtime.state.KeyedStateCheckpointOutputStream;
+import org.apache.flink.runtime.state.StateInitializationContext;
+import org.apache.flink.runtime.state.StateSnapshotContext;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.KeyedStream;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+
+import java.io.InputStream;
+
+/**
+ * keyBy().sum(1) of (key, count) pairs with the sums in an {@link OffHeapKeyedStateMap} instead of the keyed state
+ * backend: on the heap/filesystem backend every key otherwise costs a few objects the garbage collector has to
+ * trace, here it costs a few bytes off the heap. Emits the running sum of the key for every record.
+ *
+ * <p>The sums are checkpointed as raw keyed state, one key group after the other, so they are redistributed on
+ * rescaling like any keyed state. The operator declares the raw keyed state as its own, so the timer service
+ * neither reads it as timers on restore nor writes timers into it. Flink can not combine that with the legacy
+ * timer snapshots of RocksDB with heap timers (state.backend.rocksdb.timer-service.factory: HEAP), keep the
+ * default RocksDB timers there.
+ */
+public class OffHeapSumOperator<K> extends AbstractStreamOperator<Tuple2<K, Integer>>
+        implements OneInputStreamOperator<Tuple2<K, Integer>, Tuple2<K, Integer>> {
+
+    private final int pageSize;
+    private final long maxBytes;
+
+    private transient OffHeapKeyedStateMap<K, Integer> sums;
+    private transient int maxParallelism;
+    private transient Tuple2<K, Integer> reuse;
+
+    /**
+     * @param pageSize size of the off-heap pages in bytes, a power of two
+     * @param maxBytes off-heap memory budget of every subtask
+     */
+    public OffHeapSumOperator(int pageSize, long maxBytes) {
+        this.pageSize = pageSize;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * The running sum of the counts per key, with the sums off the heap.
+     */
+    public static <K> DataStream<Tuple2<K, Integer>> sum(KeyedStream<Tuple2<K, Integer>, K> counts, int pageSize,
+                                                         long maxBytes) {
+        return counts.transform("Off-heap sum", counts.getType(), new OffHeapSumOperator<>(pageSize, maxBytes));
+    }
+
+    @Override
+    public void initializeState(StateInitializationContext context) throws Exception {
+        super.initializeState(context);
+        maxParallelism = getRuntimeContext().getMaxNumberOfParallelSubtasks();
+        KeyGroupRange keyGroupRange = KeyGroupRangeAssignment.computeKeyGroupRangeForOperatorIndex(maxParallelism,
+                getRuntimeContext().getNumberOfParallelSubtasks(), getRuntimeContext().getIndexOfThisSubtask());
+        TypeSerializer<K> keySerializer = getOperatorConfig().getStateKeySerializer(getUserCodeClassloader());
+        sums = new OffHeapKeyedStateMap<>(keySerializer, IntSerializer.INSTANCE, keyGroupRange, pageSize, maxBytes);
+
+        if (context.isRestored()) {
+            for (KeyGroupStatePartitionStreamProvider provider : context.getRawKeyedStateInputs()) {
+                try (InputStream in = provider.getStream()) {
+                    sums.readKeyGroup(provider.getKeyGroupId(), new DataInputViewStreamWrapper(in));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void open() throws Exception {
+        super.open();
+        reuse = new Tuple2<>();
+        getMetricGroup().gauge("offHeapStateBytes", (Gauge<Long>) sums::getAllocatedBytes);
+        getMetricGroup().gauge("offHeapStateKeys", (Gauge<Long>) sums::size);
+    }
+
+    @Override
+    public void processElement(StreamRecord<Tuple2<K, Integer>> element) throws Exception {
+        K key = element.getValue().f0;
+        int keyGroup = KeyGroupRangeAssignment.assignToKeyGroup(key, maxParallelism);
+        Integer sum = sums.get(key, keyGroup);
+        sum = sum == null ? element.getValue().f1 : sum + element.getValue().f1;
+        sums.put(key, keyGroup, sum);
+
+        reuse.f0 = key;
+        reuse.f1 = sum;
+        output.collect(element.replace(reuse));
+    }
+
+    @Override
+    protected boolean isUsingCustomRawKeyedState() {
+        return true;
+    }
+
+    @Override
+    public void snapshotState(StateSnapshotContext context) throws Exception {
+        super.snapshotState(context);
+        //the copy-on-write snapshot keeps the written key groups consistent with each other, whatever the map does
+        //meanwhile; the raw keyed streams are written here in the synchronous part of the checkpoint
+        try (OffHeapKeyedStateMap<K, Integer>.Snapshot snapshot = sums.snapshot()) {
+            KeyedStateCheckpointOutputStream out = context.getRawKeyedOperatorStateOutput();
+            DataOutputViewStreamWrapper view = new DataOutputViewStreamWrapper(out);
+            for (int keyGroup : out.getKeyGroupList()) {
+                out.startNewKeyGroup(keyGroup);
+                snapshot.write(keyGroup, view);
+            }
+            view.flush();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        if (sums != null) {
+            sums.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.io.Serializable;
+
+/**
+ * Count, sum, min and max of a value per key, in one state record of primitive fields that is updated in place.
+ * The sum is compensated (Kahan), so the mean stays exact over long streams of doubles.
+ *
+ * <p>Instead of one update per record the statistics of a key are emitted after every emitEvery records and,
+ * with an emitIntervalMillis, at the next interval boundary for keys that changed since their last emission.
+ * 0 disables either trigger. Whatever is pending when a bounded input ends is emitted with the final watermark.
+ */
+public class RunningStatistics<IN> extends KeyedProcessFunction<String, IN, RunningStatistics.Stats> {
+
+    /**
+     * The value of a record to aggregate.
+     */
+    public interface ValueOf<IN> extends Serializable {
+        double value(IN record) throws Exception;
+    }
+
+    public static class Stats {
+        public String key;
+        public long count;
+        public double sum;
+        public double compensation;
+        public double min = Double.POSITIVE_INFINITY;
+        public double max = Double.NEGATIVE_INFINITY;
+        //records since the last emission
+        public long pending;
+
+        public Stats() {
+        }
+
+        public void add(double value) {
+            double y = value - compensation;
+            double t = sum + y;
+            compensation = (t - sum) - y;
+            sum = t;
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            pending++;
+        }
+
+        /**
+         * A snapshot to emit, the state record itself keeps changing after the emission.
+         */
+        public Stats copy() {
+            Stats copy = new Stats();
+            copy.key = key;
+            copy.count = count;
+            copy.sum = sum;
+            copy.compensation = compensation;
+            copy.min = min;
+            copy.max = max;
+            copy.pending = pending;
+            return copy;
+        }
+
+        public double mean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        @Override
+        public String toString() {
+            return key + " count=" + count + " mean=" + mean() + " min=" + min + " max=" + max;
+        }
+    }
+
+    private final ValueOf<IN> valueOf;
+    private final long emitEvery;
+    private final long emitIntervalMillis;
+
+    private transient ValueState<Stats> stats;
+
+    public RunningStatistics(ValueOf<IN> valueOf, long emitEvery, long emitIntervalMillis) {
+        this.valueOf = valueOf;
+        this.emitEvery = emitEvery;
+        this.emitIntervalMillis = emitIntervalMillis;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        stats = getRuntimeContext().getState(new ValueStateDescriptor<>("runningStatistics", Stats.class));
+    }
+
+    @Override
+    public void processElement(IN record, Context ctx, Collector<Stats> out) throws Exception {
+        Stats current = stats.value();
+        if (current == null) {
+            current = new Stats();
+            current.key = ctx.getCurrentKey();
+            //fires with the final watermark of a bounded input and flushes what is still pending
+            ctx.timerService().registerEventTimeTimer(Long.MAX_VALUE);
+        }
+        current.add(valueOf.value(record));
+
+        if (emitEvery > 0 && current.pending >= emitEvery) {
+            current.pending = 0;
+            out.collect(current.copy());
+        } else if (emitIntervalMillis > 0 && current.pending == 1) {
+            //first change since the last emission, flush it at the next interval boundary
+            long now = ctx.timerService().currentProcessingTime();
+            ctx.timerService().registerProcessingTimeTimer(now - now % emitIntervalMillis + emitIntervalMillis);
+        }
+        stats.update(current);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<Stats> out) throws Exception {
+        Stats current = stats.value();
+        if (current != null && current.pending > 0) {
+            current.pending = 0;
+            out.collect(current.copy());
+            stats.update(current);
+        }
+    }
+}
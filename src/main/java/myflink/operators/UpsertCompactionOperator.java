@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.BoundedOneInput;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.api.watermark.Watermark;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns a stream of per record updates, like the output of keyBy().sum(), into a changelog with at most one
+ * record per changed key and flush: the latest update of every key is buffered and the buffer is emitted every
+ * intervalMillis of processing time, before every checkpoint barrier, watermark and at the end of the input.
+ * The buffer is flushed early when it holds maxKeys keys, which bounds its memory.
+ *
+ * <p>As the buffer is always empty when a checkpoint is taken, the operator has no state of its own. Chain it
+ * directly behind the keyed operator, so all updates of a key pass the same subtask in order.
+ */
+public class UpsertCompactionOperator<T, K> extends AbstractStreamOperator<T>
+        implements OneInputStreamOperator<T, T>, BoundedOneInput {
+
+    private final KeySelector<T, K> keySelector;
+    private final long intervalMillis;
+    private final int maxKeys;
+
+    private transient Map<K, StreamRecord<T>> latest;
+    private transient TypeSerializer<T> serializer;
+
+    public UpsertCompactionOperator(KeySelector<T, K> keySelector, long intervalMillis, int maxKeys) {
+        this.keySelector = keySelector;
+        this.intervalMillis = intervalMillis;
+        this.maxKeys = maxKeys;
+        this.chainingStrategy = ChainingStrategy.ALWAYS;
+    }
+
+    /**
+     * Compacts the updates to the latest per key every intervalMillis.
+     */
+    public static <T, K> DataStream<T> compact(DataStream<T> updates, KeySelector<T, K> keySelector,
+                                               long intervalMillis, int maxKeys) {
+        return updates.transform("Upsert compaction", updates.getType(),
+                new UpsertCompactionOperator<>(keySelector, intervalMillis, maxKeys));
+    }
+
+    @Override
+    public void open() throws Exception {
+        super.open();
+        latest = new LinkedHashMap<>();
+        serializer = getOperatorConfig().getTypeSerializerIn(0, getUserCodeClassloader());
+        scheduleFlush();
+    }
+
+    @Override
+    public void processElement(StreamRecord<T> element) throws Exception {
+        //the upstream operator may reuse its output object, keep a copy
+        T value = serializer.copy(element.getValue());
+        K key = keySelector.getKey(value);
+
+        StreamRecord<T> buffered = latest.get(key);
+        if (buffered != null) {
+            buffered.replace(value);
+            if (element.hasTimestamp()) {
+                buffered.setTimestamp(element.getTimestamp());
+            } else {
+                buffered.eraseTimestamp();
+            }
+        } else {
+            latest.put(key, element.hasTimestamp()
+                    ? new StreamRecord<>(value, element.getTimestamp())
+                    : new StreamRecord<>(value));
+            if (latest.size() >= maxKeys) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public void processWatermark(Watermark mark) throws Exception {
+        //the buffered updates must not become late behind the watermark
+        flush();
+        super.processWatermark(mark);
+    }
+
+    @Override
+    public void prepareSnapshotPreBarrier(long checkpointId) throws Exception {
+        flush();
+    }
+
+    @Override
+    public void endInput() throws Exception {
+        flush();
+    }
+
+    private void flush() {
+        for (StreamRecord<T> update : latest.values()) {
+            output.collect(update);
+        }
+        latest.clear();
+    }
+
+    private void scheduleFlush() {
+        long now = getProcessingTimeService().getCurrentProcessingTime();
+        getProcessingTimeService().registerTimer(now + intervalMillis, timestamp -> {
+            flush();
+            scheduleFlush();
+        });
+    }
+}
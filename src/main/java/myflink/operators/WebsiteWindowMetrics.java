@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import myflink.StreamingJob;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * All per website metrics of the web traffic assignment in one keyed window: clicks, distinct users and the
+ * average time spent are aggregated into one {@link Stats} record per website and window, so every click is
+ * shuffled and touches state once instead of once per metric.
+ *
+ * <p>The clicks per website are the main output, the other metrics go to the {@link #DISTINCT_USERS} and
+ * {@link #AVERAGE_TIME_SPENT} side outputs. All carry the window end - 1 as timestamp, so the website with the
+ * most or fewest clicks can be found with {@link ArgExtremum#windowed} over the main output.
+ */
+public class WebsiteWindowMetrics {
+
+    public static final OutputTag<Tuple2<String, Integer>> DISTINCT_USERS =
+            new OutputTag<>("distinct-users", TypeInformation.of(new TypeHint<Tuple2<String, Integer>>() {}));
+
+    public static final OutputTag<Tuple2<String, Double>> AVERAGE_TIME_SPENT =
+            new OutputTag<>("average-time-spent", TypeInformation.of(new TypeHint<Tuple2<String, Double>>() {}));
+
+    /**
+     * (website, clicks) per window, with the other metrics as side outputs.
+     */
+    public static SingleOutputStreamOperator<Tuple2<String, Long>> apply(DataStream<StreamingJob.WebTraffic> traffic,
+                                                                         WindowAssigner<Object, TimeWindow> window) {
+        return traffic
+                .keyBy(wt -> wt.WebSite)
+                .window(window)
+                .aggregate(new Aggregate(), new Emit())
+                .name("Website metrics");
+    }
+
+    /**
+     * The aggregate of one website and window.
+     */
+    public static class Stats {
+        public long clicks;
+        public long timeSpent;
+        public Set<String> users;
+
+        public Stats() {
+            users = new HashSet<>();
+        }
+    }
+
+    public static class Aggregate implements AggregateFunction<StreamingJob.WebTraffic, Stats, Stats> {
+        @Override
+        public Stats createAccumulator() {
+            return new Stats();
+        }
+
+        @Override
+        public Stats add(StreamingJob.WebTraffic click, Stats stats) {
+            stats.clicks++;
+            stats.timeSpent += click.TimeSpent;
+            stats.users.add(click.Id);
+            return stats;
+        }
+
+        @Override
+        public Stats getResult(Stats stats) {
+            return stats;
+        }
+
+        @Override
+        public Stats merge(Stats a, Stats b) {
+            a.clicks += b.clicks;
+            a.timeSpent += b.timeSpent;
+            a.users.addAll(b.users);
+            return a;
+        }
+    }
+
+    /**
+     * Splits the aggregate of a website into the metric outputs.
+     */
+    public static class Emit extends ProcessWindowFunction<Stats, Tuple2<String, Long>, String, TimeWindow> {
+        @Override
+        public void process(String website, Context context, Iterable<Stats> aggregates,
+                            Collector<Tuple2<String, Long>> out) {
+            for (Stats stats : aggregates) {
+                out.collect(Tuple2.of(website, stats.clicks));
+                context.output(DISTINCT_USERS, Tuple2.of(website, stats.users.size()));
+                context.output(AVERAGE_TIME_SPENT, Tuple2.of(website, stats.timeSpent * 1.0 / stats.clicks));
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.operators;
+
+import myflink.util.SpaceSaving;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Top k keys per time window in two stages.
+ *
+ * <p>The keys are spread over a fixed number of buckets by hash, and every bucket counts its keys of a window in
+ * one accumulator, exact or a {@link SpaceSaving} sketch with sketchCapacity counters for unbounded key spaces.
+ * At the end of the window each bucket emits only its own top k. As every key lives in one bucket, the global top
+ * k is among these partial lists, and a second stage keyed by the window end merges them into the final result.
+ *
+ * <p>With event time the merge fires when the watermark passes the window, with processing time it waits
+ * mergeDelayMillis after the window end for the partial lists of all buckets.
+ */
+public class WindowedTopK {
+
+    /**
+     * Top k of the window ending at windowEnd, largest count first.
+     */
+    public static class Result {
+        public long windowEnd;
+        public List<SpaceSaving.Counter> top;
+
+        public Result() {
+        }
+
+        public Result(long windowEnd, List<SpaceSaving.Counter> top) {
+            this.windowEnd = windowEnd;
+            this.top = top;
+        }
+
+        @Override
+        public String toString() {
+            return windowEnd + " " + top;
+        }
+    }
+
+    public static DataStream<Result> apply(DataStream<String> keys,
+                                           WindowAssigner<Object, TimeWindow> window,
+                                           int k,
+                                           int buckets,
+                                           int sketchCapacity,
+                                           boolean eventTime,
+                                           long mergeDelayMillis) {
+        return keys
+                .keyBy(key -> (key.hashCode() & Integer.MAX_VALUE) % buckets)
+                .window(window)
+                .aggregate(new CountKeys(sketchCapacity), new BucketTopK(k))
+                .name("Partial top " + k)
+                .keyBy(partial -> partial.f0)
+                .process(new MergeTopK(k, eventTime, mergeDelayMillis))
+                .name("Merge top " + k);
+    }
+
+    /**
+     * Counts the keys of one bucket and window.
+     */
+    public static class CountKeys implements AggregateFunction<String, SpaceSaving, SpaceSaving> {
+        private final int sketchCapacity;
+
+        public CountKeys(int sketchCapacity) {
+            this.sketchCapacity = sketchCapacity;
+        }
+
+        @Override
+        public SpaceSaving createAccumulator() {
+            return new SpaceSaving(sketchCapacity);
+        }
+
+        @Override
+        public SpaceSaving add(String key, SpaceSaving counts) {
+            counts.add(key);
+            return counts;
+        }
+
+        @Override
+        public SpaceSaving getResult(SpaceSaving counts) {
+            return counts;
+        }
+
+        @Override
+        public SpaceSaving merge(SpaceSaving a, SpaceSaving b) {
+            a.merge(b);
+            return a;
+        }
+    }
+
+    /**
+     * Emits (window end, counter) for the k largest counters of the bucket.
+     */
+    public static class BucketTopK extends ProcessWindowFunction<SpaceSaving, Tuple2<Long, SpaceSaving.Counter>, Integer, TimeWindow> {
+        private final int k;
+
+        public BucketTopK(int k) {
+            this.k = k;
+        }
+
+        @Override
+        public void process(Integer bucket, Context context, Iterable<SpaceSaving> counts,
+                            Collector<Tuple2<Long, SpaceSaving.Counter>> out) {
+            long windowEnd = context.window().getEnd();
+            for (SpaceSaving bucketCounts : counts) {
+                for (SpaceSaving.Counter counter : bucketCounts.top(k)) {
+                    out.collect(Tuple2.of(windowEnd, counter));
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the partial top k of all buckets of a window and emits the overall top k once. Partials arriving
+     * after that are dropped and counted: with event time the watermark is past their window, with processing
+     * time the window is marked as emitted for EMITTED_RETENTION_MILLIS.
+     */
+    public static class MergeTopK extends KeyedProcessFunction<Long, Tuple2<Long, SpaceSaving.Counter>, Result> {
+        private static final long EMITTED_RETENTION_MILLIS = 10 * 60_000;
+
+        private final int k;
+        private final boolean eventTime;
+        private final long mergeDelayMillis;
+
+        private transient ListState<SpaceSaving.Counter> partials;
+        private transient ValueState<Boolean> emitted;
+        private transient Counter latePartials;
+
+        public MergeTopK(int k, boolean eventTime, long mergeDelayMillis) {
+            this.k = k;
+            this.eventTime = eventTime;
+            this.mergeDelayMillis = mergeDelayMillis;
+        }
+
+        @Override
+        public void open(Configuration parameters) {
+            partials = getRuntimeContext().getListState(
+                    new ListStateDescriptor<>("topKPartials", SpaceSaving.Counter.class));
+            emitted = getRuntimeContext().getState(new ValueStateDescriptor<>("topKEmitted", Boolean.class));
+            latePartials = getRuntimeContext().getMetricGroup().counter("topKLatePartials");
+        }
+
+        @Override
+        public void processElement(Tuple2<Long, SpaceSaving.Counter> partial, Context ctx, Collector<Result> out)
+                throws Exception {
+            boolean late = eventTime
+                    ? partial.f0 - 1 <= ctx.timerService().currentWatermark()
+                    : emitted.value() != null;
+            if (late) {
+                //the top k of the window is out already, do not open it again
+                latePartials.inc();
+                return;
+            }
+            partials.add(partial.f1);
+            if (eventTime) {
+                ctx.timerService().registerEventTimeTimer(partial.f0 - 1);
+            } else {
+                ctx.timerService().registerProcessingTimeTimer(partial.f0 + mergeDelayMillis);
+            }
+        }
+
+        @Override
+        public void onTimer(long timestamp, OnTimerContext ctx, Collector<Result> out) throws Exception {
+            if (emitted.value() != null) {
+                emitted.clear();
+                return;
+            }
+            List<SpaceSaving.Counter> all = new ArrayList<>();
+            for (SpaceSaving.Counter counter : partials.get()) {
+                all.add(counter);
+            }
+            partials.clear();
+            out.collect(new Result(ctx.getCurrentKey(), SpaceSaving.top(all, k)));
+            if (!eventTime) {
+                emitted.update(true);
+                ctx.timerService().registerProcessingTimeTimer(timestamp + EMITTED_RETENTION_MILLIS);
+            }
+        }
+    }
+}
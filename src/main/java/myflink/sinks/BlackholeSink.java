@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.sinks;
+
+import myflink.metrics.LatencyClock;
+import org.HdrHistogram.Histogram;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MeterView;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Consumes the records without any I/O, for benchmarking a pipeline without the cost of print(). Counts the
+ * records, as the blackholeRecords counter and blackholeRecordsPerSecond meter as well, and records the latency
+ * of every record with a timestamp, the time from that timestamp to the sink, in an HdrHistogram in
+ * microseconds of the {@link LatencyClock}.
+ *
+ * <p>The latency is only end to end when the source stamps the records with the time they were due, like
+ * {@link myflink.sources.SyntheticWordSource} does; behind a window it is the time from the window end, whose
+ * millisecond timestamp is converted.
+ *
+ * <p>When the sink closes every subtask writes run-runId/latency-subtask.hgrm, the percentile distribution of
+ * its histogram, to the report directory and prints a summary line.
+ */
+public class BlackholeSink<T> extends RichSinkFunction<T> {
+
+    private final String reportDirectory;
+    private final long runId;
+
+    private transient Histogram latency;
+    private transient Counter records;
+    private transient long firstNanos;
+    private transient long lastNanos;
+
+    /**
+     * @param runId the id of the run, e.g. its start time, shared by all subtasks
+     */
+    public BlackholeSink(String reportDirectory, long runId) {
+        this.reportDirectory = reportDirectory;
+        this.runId = runId;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        //3 significant digits, resized to whatever latency comes along
+        latency = new Histogram(3);
+        latency.setAutoResize(true);
+        records = getRuntimeContext().getMetricGroup().counter("blackholeRecords");
+        getRuntimeContext().getMetricGroup().meter("blackholeRecordsPerSecond", new MeterView(records));
+    }
+
+    @Override
+    public void invoke(T record, Context context) {
+        long now = System.nanoTime();
+        if (firstNanos == 0) {
+            firstNanos = now;
+        }
+        lastNanos = now;
+        records.inc();
+
+        //global windows emit with Long.MAX_VALUE, which is no stamp of the source
+        Long timestamp = context.timestamp();
+        if (timestamp != null && timestamp != Long.MAX_VALUE) {
+            long sent = LatencyClock.toMicros(timestamp);
+            long nowMicros = LatencyClock.nowMicros();
+            if (sent <= nowMicros) {
+                latency.recordValue(nowMicros - sent);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (records == null || records.getCount() == 0) {
+            return;
+        }
+        int subtask = getRuntimeContext().getIndexOfThisSubtask();
+        double seconds = Math.max(1, lastNanos - firstNanos) / 1e9;
+        System.out.printf("blackhole run %d subtask %d: %d records in %.1f s, %.0f records/s, latency us "
+                        + "p50 %d p99 %d p99.9 %d max %d (%d stamped)%n",
+                runId, subtask, records.getCount(), seconds, records.getCount() / seconds,
+                latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                latency.getValueAtPercentile(99.9), latency.getMaxValue(), latency.getTotalCount());
+
+        File run = new File(reportDirectory, "run-" + runId);
+        run.mkdirs();
+        try (PrintStream out = new PrintStream(new FileOutputStream(new File(run, "latency-" + subtask + ".hgrm")))) {
+            latency.outputPercentileDistribution(out, 1.0);
+        }
+    }
+}
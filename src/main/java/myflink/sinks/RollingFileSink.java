@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.sinks;
+
+import org.apache.flink.api.common.state.CheckpointListener;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.java.tuple.Tuple;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.core.memory.DataOutputViewStreamWrapper;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the records of every subtask to rolling part files in a local directory, without the per record
+ * synchronization of print() and with the file I/O off the task thread.
+ *
+ * <p>Records are encoded into a chunk buffer on the task thread. Full chunks go through a bounded queue to a
+ * writer thread, which appends them to the in-progress part and rolls it when it reaches maxPartBytes or is
+ * rolloverMillis old. A full queue blocks the task thread, which backpressures the job instead of buffering
+ * without bound.
+ *
+ * <p>While the job runs, parts are exactly once: a checkpoint rolls the in-progress part, rolled parts are kept as
+ * hidden pending files in the checkpoint and renamed to part-subtask-n when the checkpoint completes. Parts
+ * written after the last completed checkpoint of a failed attempt stay hidden and are overwritten when their
+ * numbers come again.
+ *
+ * <p>The end of the input is at-least-once: finish() makes all parts visible without waiting for a checkpoint, so
+ * a failure between finish() and the end of the job replays the records after the last completed checkpoint into
+ * new parts next to the visible ones. Without checkpointing the parts are only made visible when the input ends.
+ */
+public class RollingFileSink<T> extends RichSinkFunction<T> implements CheckpointedFunction, CheckpointListener {
+
+    /**
+     * Writes one record.
+     */
+    public interface Encoder<T> extends Serializable {
+        void encode(T record, DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * One line per record, tuple fields separated by commas, other records by their toString().
+     */
+    public static <T> Encoder<T> csv() {
+        return (record, out) -> {
+            if (record instanceof Tuple) {
+                Tuple tuple = (Tuple) record;
+                for (int i = 0; i < tuple.getArity(); i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    out.write(String.valueOf((Object) tuple.getField(i)).getBytes(StandardCharsets.UTF_8));
+                }
+            } else {
+                out.write(String.valueOf(record).getBytes(StandardCharsets.UTF_8));
+            }
+            out.write('\n');
+        };
+    }
+
+    /**
+     * The records in the binary format of their Flink serializer, readable with the same serializer.
+     */
+    public static <T> Encoder<T> binary(TypeSerializer<T> serializer) {
+        return new Encoder<T>() {
+            private transient DataOutputViewStreamWrapper view;
+            private transient OutputStream viewOf;
+
+            @Override
+            public void encode(T record, DataOutputStream out) throws IOException {
+                if (viewOf != out) {
+                    view = new DataOutputViewStreamWrapper(out);
+                    viewOf = out;
+                }
+                serializer.serialize(record, view);
+            }
+        };
+    }
+
+    private static final Object STOP = new Object();
+
+    private final String directory;
+    private final Encoder<T> encoder;
+    private final String suffix;
+    private final long maxPartBytes;
+    private final long rolloverMillis;
+    private final int chunkBytes;
+    private final int queueChunks;
+
+    private transient ByteArrayOutputStream chunk;
+    private transient DataOutputStream chunkOut;
+    private transient BlockingQueue<Object> queue;
+    private transient Writer writer;
+    private transient Thread writerThread;
+    private transient TreeMap<Long, List<String>> pendingPerCheckpoint;
+    private transient ListState<Tuple2<Long, String>> pendingState;
+    private transient ListState<Long> nextPartState;
+    private transient long restoredNextPart;
+
+    public RollingFileSink(String directory, Encoder<T> encoder, String suffix) {
+        this(directory, encoder, suffix, 128L << 20, 60_000, 64 << 10, 16);
+    }
+
+    /**
+     * @param maxPartBytes   part size at which a part is rolled
+     * @param rolloverMillis age at which a part is rolled
+     * @param chunkBytes     size of the chunks handed to the writer thread
+     * @param queueChunks    number of chunks that may wait for the writer thread
+     */
+    public RollingFileSink(String directory, Encoder<T> encoder, String suffix, long maxPartBytes,
+                           long rolloverMillis, int chunkBytes, int queueChunks) {
+        this.directory = directory;
+        this.encoder = encoder;
+        this.suffix = suffix;
+        this.maxPartBytes = maxPartBytes;
+        this.rolloverMillis = rolloverMillis;
+        this.chunkBytes = chunkBytes;
+        this.queueChunks = queueChunks;
+    }
+
+    @Override
+    public void open(Configuration parameters) throws Exception {
+        chunk = new ByteArrayOutputStream(chunkBytes + (chunkBytes >> 2));
+        chunkOut = new DataOutputStream(chunk);
+        queue = new ArrayBlockingQueue<>(queueChunks);
+        getRuntimeContext().getMetricGroup().gauge("rollingFileQueuedChunks", () -> queue.size());
+
+        writer = new Writer(getRuntimeContext().getIndexOfThisSubtask(), restoredNextPart);
+        writerThread = new Thread(writer, "Rolling file writer " + getRuntimeContext().getTaskNameWithSubtasks());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void invoke(T record, Context context) throws Exception {
+        encoder.encode(record, chunkOut);
+        if (chunk.size() >= chunkBytes) {
+            handOver();
+        }
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        rollAndWait();
+        pendingPerCheckpoint.put(context.getCheckpointId(), writer.takeRolled());
+
+        pendingState.clear();
+        for (Map.Entry<Long, List<String>> entry : pendingPerCheckpoint.entrySet()) {
+            for (String part : entry.getValue()) {
+                pendingState.add(Tuple2.of(entry.getKey(), part));
+            }
+        }
+        nextPartState.clear();
+        nextPartState.add(writer.nextPart);
+    }
+
+    @Override
+    public void notifyCheckpointComplete(long checkpointId) throws Exception {
+        Iterator<Map.Entry<Long, List<String>>> completed =
+                pendingPerCheckpoint.headMap(checkpointId, true).entrySet().iterator();
+        while (completed.hasNext()) {
+            for (String part : completed.next().getValue()) {
+                commit(part);
+            }
+            completed.remove();
+        }
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        pendingState = context.getOperatorStateStore().getListState(new ListStateDescriptor<>(
+                "rollingFilePending", TypeInformation.of(new TypeHint<Tuple2<Long, String>>() {})));
+        //union, so that no subtask reuses part numbers after rescaling
+        nextPartState = context.getOperatorStateStore().getUnionListState(
+                new ListStateDescriptor<>("rollingFileNextPart", BasicTypeInfo.LONG_TYPE_INFO));
+        pendingPerCheckpoint = new TreeMap<>();
+
+        //the pending parts of the restored checkpoint belong to a completed checkpoint
+        for (Tuple2<Long, String> pending : pendingState.get()) {
+            commit(pending.f1);
+        }
+        pendingState.clear();
+        for (Long nextPart : nextPartState.get()) {
+            restoredNextPart = Math.max(restoredNextPart, nextPart);
+        }
+        new File(directory).mkdirs();
+    }
+
+    @Override
+    public void finish() throws Exception {
+        //at-least-once, the parts since the last completed checkpoint are committed without one
+        rollAndWait();
+        notifyCheckpointComplete(Long.MAX_VALUE);
+        for (String part : writer.takeRolled()) {
+            commit(part);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread.join();
+        }
+    }
+
+    private void handOver() throws Exception {
+        if (chunk.size() > 0) {
+            enqueue(chunk.toByteArray());
+            chunk.reset();
+        }
+    }
+
+    private void rollAndWait() throws Exception {
+        handOver();
+        CountDownLatch rolled = new CountDownLatch(1);
+        enqueue(rolled);
+        while (!rolled.await(100, TimeUnit.MILLISECONDS)) {
+            writer.checkFailure();
+        }
+        writer.checkFailure();
+    }
+
+    private void enqueue(Object item) throws Exception {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            writer.checkFailure();
+        }
+    }
+
+    private void commit(String pending) throws IOException {
+        File file = new File(pending);
+        File committed = new File(file.getParentFile(), file.getName().substring(1, file.getName().length()
+                - ".pending".length()));
+        if (file.exists()) {
+            Files.move(file.toPath(), committed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } else if (!committed.exists()) {
+            throw new IOException("Pending part " + pending + " is gone");
+        }
+    }
+
+    /**
+     * Owns the part files: appends the chunks, rolls parts by size, age and on request.
+     */
+    private class Writer implements Runnable {
+        private final int subtask;
+        private final List<String> rolled = new ArrayList<>();
+
+        private volatile long nextPart;
+        private volatile Throwable failure;
+
+        private File part;
+        private OutputStream partOut;
+        private long partBytes;
+        private long partOpened;
+
+        Writer(int subtask, long nextPart) {
+            this.subtask = subtask;
+            this.nextPart = nextPart;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Object item = queue.poll(Math.max(1, rolloverMillis / 4), TimeUnit.MILLISECONDS);
+                    if (item instanceof byte[]) {
+                        write((byte[]) item);
+                        if (partBytes >= maxPartBytes) {
+                            roll();
+                        }
+                    } else if (item instanceof CountDownLatch) {
+                        roll();
+                        ((CountDownLatch) item).countDown();
+                    }
+                    if (partOut != null && System.currentTimeMillis() - partOpened >= rolloverMillis) {
+                        roll();
+                    }
+                }
+            } catch (InterruptedException e) {
+                //closed
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                if (partOut != null) {
+                    try {
+                        partOut.close();
+                    } catch (IOException e) {
+                        //the part is in progress and never committed
+                    }
+                }
+            }
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            if (partOut == null) {
+                part = new File(directory, ".part-" + subtask + "-" + nextPart + suffix + ".inprogress");
+                partOut = new FileOutputStream(part);
+                partBytes = 0;
+                partOpened = System.currentTimeMillis();
+            }
+            partOut.write(bytes);
+            partBytes += bytes.length;
+        }
+
+        private void roll() throws IOException {
+            if (partOut == null) {
+                return;
+            }
+            partOut.close();
+            partOut = null;
+            String name = part.getName();
+            File pending = new File(directory, name.substring(0, name.length() - ".inprogress".length()) + ".pending");
+            Files.move(part.toPath(), pending.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            synchronized (rolled) {
+                rolled.add(pending.getPath());
+            }
+            nextPart++;
+        }
+
+        List<String> takeRolled() {
+            synchronized (rolled) {
+                List<String> taken = new ArrayList<>(rolled);
+                rolled.clear();
+                return taken;
+            }
+        }
+
+        void checkFailure() throws IOException {
+            if (failure != null) {
+                throw new IOException("Writing the parts to " + directory + " failed", failure);
+            }
+        }
+    }
+}
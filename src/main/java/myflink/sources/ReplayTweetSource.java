@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.sources;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays recorded tweets, one JSON object per line as written by the streaming API, from a file or from all
+ * files of a directory, in place of the live TwitterSource.
+ *
+ * <p>Plain files are cut into splits of splitBytes, a gzip file (name ending in .gz) is one split. Split i is read
+ * by subtask i % parallelism. With a speed the tweets are emitted on one clock shared by all subtasks, which runs
+ * speed times faster than the timestamp_ms of the recording, a subtask whose split lies ahead of the clock waits.
+ * With speed 0 or less every subtask emits as fast as it can.
+ *
+ * <p>The lines emitted per split and the position of the clock are checkpointed in union state, so a restored
+ * source, also with a different parallelism, continues where the checkpoint left off.
+ */
+public class ReplayTweetSource extends RichParallelSourceFunction<String> implements CheckpointedFunction {
+
+    private static final long DONE = Long.MAX_VALUE;
+    private static final byte[] TIMESTAMP_FIELD = "\"timestamp_ms\":".getBytes(StandardCharsets.UTF_8);
+
+    private final String path;
+    private final double speed;
+    private final long splitBytes;
+
+    private volatile boolean running = true;
+
+    // lines emitted per split of this subtask, DONE once the split is read completely
+    private final Map<Integer, Long> progress = new HashMap<>();
+    private long replayedUntil = -1;
+    private transient ListState<Tuple2<Integer, Long>> progressState;
+    private transient ListState<Long> clockState;
+
+    public ReplayTweetSource(String path, double speed, long splitBytes) {
+        this.path = path;
+        this.speed = speed;
+        this.splitBytes = splitBytes;
+    }
+
+    /**
+     * --input (file or directory), --speed multiplier of the recorded rate (0, as fast as possible) and
+     * --splitmb (64).
+     */
+    public static ReplayTweetSource fromParameters(ParameterTool params) {
+        return new ReplayTweetSource(
+                params.getRequired("input"),
+                params.getDouble("speed", 0),
+                params.getLong("splitmb", 64) << 20);
+    }
+
+    @Override
+    public void run(SourceContext<String> ctx) throws Exception {
+        int subtask = getRuntimeContext().getIndexOfThisSubtask();
+        int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+        List<Split> splits = splits(new File(path), splitBytes);
+
+        long eventBase = -1;
+        long wallBase = System.nanoTime();
+        if (speed > 0 && !splits.isEmpty()) {
+            eventBase = firstTimestamp(splits.get(0));
+            if (replayedUntil > eventBase) {
+                //restored, the clock continues at the replay position of the checkpoint
+                wallBase -= (long) ((replayedUntil - eventBase) * 1_000_000 / speed);
+            }
+        }
+
+        LineReader reader = new LineReader();
+        for (int s = subtask; s < splits.size() && running; s += parallelism) {
+            long done = progress.getOrDefault(s, 0L);
+            if (done == DONE) {
+                continue;
+            }
+
+            long lines = 0;
+            try (InputStream in = splits.get(s).open()) {
+                reader.reset(in, splits.get(s));
+                while (running && reader.next()) {
+                    if (lines++ < done) {
+                        continue;
+                    }
+
+                    long timestamp = -1;
+                    if (eventBase >= 0 && (timestamp = reader.timestamp()) >= 0) {
+                        long wait = wallBase + (long) ((timestamp - eventBase) * 1_000_000 / speed) - System.nanoTime();
+                        while (wait > 0 && running) {
+                            LockSupport.parkNanos(Math.min(wait, 100_000_000L));
+                            wait = wallBase + (long) ((timestamp - eventBase) * 1_000_000 / speed) - System.nanoTime();
+                        }
+                    }
+
+                    String line = reader.line();
+                    synchronized (ctx.getCheckpointLock()) {
+                        ctx.collect(line);
+                        progress.put(s, lines);
+                        if (timestamp > replayedUntil) {
+                            replayedUntil = timestamp;
+                        }
+                    }
+                }
+            }
+            if (running) {
+                synchronized (ctx.getCheckpointLock()) {
+                    progress.put(s, DONE);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        progressState.clear();
+        for (Map.Entry<Integer, Long> split : progress.entrySet()) {
+            progressState.add(Tuple2.of(split.getKey(), split.getValue()));
+        }
+        clockState.clear();
+        clockState.add(replayedUntil);
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        progressState = context.getOperatorStateStore().getUnionListState(new ListStateDescriptor<>(
+                "replayTweetProgress", TypeInformation.of(new TypeHint<Tuple2<Integer, Long>>() {})));
+        clockState = context.getOperatorStateStore().getUnionListState(
+                new ListStateDescriptor<>("replayTweetClock", BasicTypeInfo.LONG_TYPE_INFO));
+
+        if (context.isRestored()) {
+            int subtask = getRuntimeContext().getIndexOfThisSubtask();
+            int parallelism = getRuntimeContext().getNumberOfParallelSubtasks();
+            for (Tuple2<Integer, Long> split : progressState.get()) {
+                if (split.f0 % parallelism == subtask) {
+                    progress.put(split.f0, split.f1);
+                }
+            }
+            //the slowest subtask decides where the shared clock resumes
+            for (Long clock : clockState.get()) {
+                if (clock >= 0 && (replayedUntil < 0 || clock < replayedUntil)) {
+                    replayedUntil = clock;
+                }
+            }
+        }
+    }
+
+    private static long firstTimestamp(Split split) throws IOException {
+        LineReader reader = new LineReader();
+        try (InputStream in = split.open()) {
+            reader.reset(in, split);
+            while (reader.next()) {
+                long timestamp = reader.timestamp();
+                if (timestamp >= 0) {
+                    return timestamp;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static List<Split> splits(File path, long splitBytes) {
+        File[] files = path.isDirectory() ? path.listFiles(File::isFile) : new File[]{path};
+        if (files == null) {
+            throw new IllegalArgumentException("Cannot list " + path);
+        }
+        Arrays.sort(files);
+
+        List<Split> splits = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(".gz")) {
+                splits.add(new Split(file, 0, Long.MAX_VALUE, true));
+            } else {
+                for (long start = 0; start < file.length(); start += splitBytes) {
+                    splits.add(new Split(file, start, Math.min(start + splitBytes, file.length()), false));
+                }
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Byte range of a file. A line belongs to the split its first byte lies in.
+     */
+    static class Split {
+        final File file;
+        final long start;
+        final long end;
+        final boolean gzip;
+
+        Split(File file, long start, long end, boolean gzip) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.gzip = gzip;
+        }
+
+        InputStream open() throws IOException {
+            InputStream in = new FileInputStream(file);
+            if (gzip) {
+                return new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+            }
+            long skipped = 0;
+            // start one byte early, a newline there means the split begins with a whole line
+            long from = Math.max(0, start - 1);
+            while (skipped < from) {
+                long n = in.skip(from - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+            return new BufferedInputStream(in, 1 << 16);
+        }
+    }
+
+    /**
+     * Reads the lines of a split into a reused byte buffer, decoding a line to a String only when it is emitted.
+     */
+    static class LineReader {
+        private InputStream in;
+        private byte[] buffer = new byte[4096];
+        private int length;
+        private long position;
+        private long end;
+
+        void reset(InputStream in, Split split) throws IOException {
+            this.in = in;
+            this.end = split.end;
+            this.position = Math.max(0, split.start - 1);
+            if (split.start > 0) {
+                //the partial line before the first newline belongs to the previous split
+                int b;
+                while ((b = in.read()) != -1) {
+                    position++;
+                    if (b == '\n') {
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean next() throws IOException {
+            if (position >= end) {
+                return false;
+            }
+            length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    break;
+                }
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                buffer[length++] = (byte) b;
+            }
+            if (length > 0 && buffer[length - 1] == '\r') {
+                length--;
+            }
+            return b != -1 || length > 0;
+        }
+
+        String line() {
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * The timestamp_ms of the line, quoted or not, -1 if it has none.
+         */
+        long timestamp() {
+            outer:
+            for (int i = length - TIMESTAMP_FIELD.length; i >= 0; i--) {
+                for (int j = 0; j < TIMESTAMP_FIELD.length; j++) {
+                    if (buffer[i + j] != TIMESTAMP_FIELD[j]) {
+                        continue outer;
+                    }
+                }
+                int k = i + TIMESTAMP_FIELD.length;
+                while (k < length && (buffer[k] == '"' || buffer[k] == ' ')) {
+                    k++;
+                }
+                long timestamp = 0;
+                int digits = 0;
+                for (; k < length && buffer[k] >= '0' && buffer[k] <= '9'; k++, digits++) {
+                    timestamp = timestamp * 10 + (buffer[k] - '0');
+                }
+                return digits > 0 ? timestamp : -1;
+            }
+            return -1;
+        }
+    }
+}
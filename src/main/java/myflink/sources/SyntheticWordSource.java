@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.sources;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.BasicTypeInfo;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.source.RichParallelSourceFunction;
+
+import myflink.metrics.LatencyClock;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates lines of space separated words ("w123 w7 w98765") so the socket based examples can run without
+ * "nc -l 9999". The words are derived from the line offset, so a restored subtask replays exactly the same lines.
+ *
+ * <p>The offset of every subtask is checkpointed, which makes the source usable for the recovery (4**) examples.
+ *
+ * <p>Every line carries the time it was due as record timestamp, in microseconds of the {@link LatencyClock}, which
+ * keyBy, sum and friends pass on, so a {@link myflink.sinks.BlackholeSink} can measure the latency from the
+ * source below a millisecond. The timestamps are no milliseconds, so do not assign event time windows on them. With a --rate that is the time
+ * the rate schedules the line for, not when it was actually emitted: when the job backpressures the source the
+ * lines fall behind schedule and their wait counts, instead of being hidden by the coordinated omission of a
+ * source that only measures what it manages to send.
+ */
+public class SyntheticWordSource extends RichParallelSourceFunction<String> implements CheckpointedFunction {
+
+    private final long linesPerSubtask;
+    private final int vocabulary;
+    private final int wordsPerLine;
+    private final long linesPerSecond;
+
+    private volatile boolean running = true;
+    private long offset;
+    private transient ListState<Long> offsetState;
+
+    /**
+     * @param linesPerSubtask number of lines every subtask emits, 0 or less for an unbounded source
+     * @param vocabulary      number of distinct words
+     * @param wordsPerLine    number of words in every line
+     * @param linesPerSecond  rate limit of every subtask, 0 or less to emit as fast as possible
+     */
+    public SyntheticWordSource(long linesPerSubtask, int vocabulary, int wordsPerLine, long linesPerSecond) {
+        this.linesPerSubtask = linesPerSubtask;
+        this.vocabulary = vocabulary;
+        this.wordsPerLine = wordsPerLine;
+        this.linesPerSecond = linesPerSecond;
+    }
+
+    /**
+     * --lines (per subtask, default 1000000), --vocabulary (100000), --words per line (10) and --rate in lines
+     * per second and subtask (0, unlimited).
+     */
+    public static SyntheticWordSource fromParameters(ParameterTool params) {
+        return new SyntheticWordSource(
+                params.getLong("lines", 1_000_000),
+                params.getInt("vocabulary", 100_000),
+                params.getInt("words", 10),
+                params.getLong("rate", 0));
+    }
+
+    @Override
+    public void run(SourceContext<String> ctx) throws Exception {
+        int subtask = getRuntimeContext().getIndexOfThisSubtask();
+        StringBuilder line = new StringBuilder();
+
+        long startOffset = offset;
+        long startNanos = System.nanoTime();
+        long startMicros = LatencyClock.nowMicros();
+
+        while (running && (linesPerSubtask <= 0 || offset < linesPerSubtask)) {
+            line.setLength(0);
+            for (int i = 0; i < wordsPerLine; i++) {
+                if (i > 0) {
+                    line.append(' ');
+                }
+                line.append('w').append(word(subtask, offset, i));
+            }
+
+            long due = linesPerSecond > 0
+                    ? startMicros + (offset - startOffset) * 1_000_000 / linesPerSecond
+                    : LatencyClock.nowMicros();
+            synchronized (ctx.getCheckpointLock()) {
+                ctx.collectWithTimestamp(line.toString(), due);
+                offset++;
+            }
+
+            if (linesPerSecond > 0) {
+                long next = startNanos + (offset - startOffset) * 1_000_000_000L / linesPerSecond;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+        }
+    }
+
+    private int word(int subtask, long lineOffset, int position) {
+        long h = (lineOffset * 31 + position) * 0x9E3779B97F4A7C15L + subtask;
+        return (int) Math.floorMod(h ^ (h >>> 29), (long) vocabulary);
+    }
+
+    @Override
+    public void cancel() {
+        running = false;
+    }
+
+    @Override
+    public void snapshotState(FunctionSnapshotContext context) throws Exception {
+        offsetState.clear();
+        offsetState.add(offset);
+    }
+
+    @Override
+    public void initializeState(FunctionInitializationContext context) throws Exception {
+        offsetState = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("syntheticWordOffset", BasicTypeInfo.LONG_TYPE_INFO));
+
+        for (Long restored : offsetState.get()) {
+            offset = restored;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from a primitive long key to a count and a sum, for pre-aggregating records before a
+ * shuffle without boxing a key or a tuple per record. Keys, counts and sums live in three parallel arrays, a slot is
+ * free while its count is 0.
+ */
+public class LongAggregateMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private long[] counts;
+    private long[] sums;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongAggregateMap(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedKeys / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Adds one record with the given value to the key.
+     */
+    public void add(long key, long value) {
+        add(key, 1, value);
+    }
+
+    public void add(long key, long count, long sum) {
+        int slot = slot(key);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot] += count;
+                sums[slot] += sum;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        sums[slot] = sum;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Slots of the map, iterate with {@code for (int i = 0; i < capacity(); i++) if (isUsed(i)) ...}.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return counts[slot] != 0;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    public long sumAt(int slot) {
+        return sums[slot];
+    }
+
+    /**
+     * Empties the map and keeps its capacity.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        // murmur3 finalizer, keys packed from two small ints would otherwise collide in the low bits
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new long[capacity];
+        sums = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldSums = sums;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                add(oldKeys[i], oldCounts[i], oldSums[i]);
+            }
+        }
+    }
+}
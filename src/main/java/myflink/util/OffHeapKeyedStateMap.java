@@ -0,0 +1,555 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.util;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.core.memory.MemorySegment;
+import org.apache.flink.core.memory.MemorySegmentFactory;
+import org.apache.flink.runtime.state.KeyGroupRange;
+import org.apache.flink.util.MathUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keyed state map with serialized keys and values in off-heap memory segments, so millions of keys cost the
+ * garbage collector nothing: one open addressing table per key group, linear probing over 8 byte slots holding the
+ * key hash and the address of the entry, and the entries (key length, value length, key, value) appended to data
+ * pages. An update of the same serialized size is written in place, otherwise the entry is appended again and the
+ * key group is compacted once more than half of its data pages is garbage.
+ *
+ * <p>{@link #snapshot()} takes a copy-on-write snapshot: it only references the current pages, and the map copies a
+ * page before it writes to one a snapshot still holds. The snapshot stays consistent while the map is updated
+ * and can be written from another thread; close it to give its pages back.
+ *
+ * <p>All pages come from one budget of maxBytes, an update that needs more fails instead of growing further.
+ * Not thread safe, apart from writing and closing snapshots.
+ */
+public class OffHeapKeyedStateMap<K, V> implements AutoCloseable {
+
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY = 0L;
+    private static final int HEADER_BYTES = 8;
+
+    private final TypeSerializer<K> keySerializer;
+    private final TypeSerializer<V> valueSerializer;
+    private final KeyGroupRange keyGroupRange;
+    private final int pageSize;
+    private final int slotsPerPage;
+    private final long maxBytes;
+
+    private final List<Table> tables;
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private long size;
+
+    private final DataOutputSerializer keyOut = new DataOutputSerializer(64);
+    private final DataOutputSerializer valueOut = new DataOutputSerializer(64);
+    private final DataInputDeserializer valueIn = new DataInputDeserializer();
+    private byte[] readBuffer = new byte[64];
+
+    /**
+     * @param pageSize size of the pages in bytes, a power of two, larger than any entry
+     * @param maxBytes budget of all pages of the map, including the ones held by snapshots
+     */
+    public OffHeapKeyedStateMap(TypeSerializer<K> keySerializer, TypeSerializer<V> valueSerializer,
+                                KeyGroupRange keyGroupRange, int pageSize, long maxBytes) {
+        if (Integer.bitCount(pageSize) != 1 || pageSize < 1024) {
+            throw new IllegalArgumentException("The page size must be a power of two of at least 1024 bytes.");
+        }
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.keyGroupRange = keyGroupRange;
+        this.pageSize = pageSize;
+        this.slotsPerPage = pageSize / 8;
+        this.maxBytes = maxBytes;
+        this.tables = new ArrayList<>(Collections.nCopies(keyGroupRange.getNumberOfKeyGroups(), null));
+    }
+
+    public V get(K key, int keyGroup) throws IOException {
+        Table table = tables.get(keyGroup - keyGroupRange.getStartKeyGroup());
+        if (table == null) {
+            return null;
+        }
+        byte[] keyBytes = serialize(keySerializer, key, keyOut);
+        int keyLength = keyOut.length();
+        int slot = table.find(Hash(keyBytes, keyLength), keyBytes, keyLength);
+        if (slot < 0) {
+            return null;
+        }
+
+        int address = Address(table.slot(slot));
+        MemorySegment page = table.data.get(address / pageSize).segment;
+        int offset = address % pageSize;
+        int valueLength = page.getInt(offset + 4);
+        if (readBuffer.length < valueLength) {
+            readBuffer = new byte[Math.max(valueLength, readBuffer.length * 2)];
+        }
+        page.get(offset + HEADER_BYTES + keyLength, readBuffer, 0, valueLength);
+        valueIn.setBuffer(readBuffer, 0, valueLength);
+        return valueSerializer.deserialize(valueIn);
+    }
+
+    public void put(K key, int keyGroup, V value) throws IOException {
+        byte[] keyBytes = serialize(keySerializer, key, keyOut);
+        byte[] valueBytes = serialize(valueSerializer, value, valueOut);
+        put(keyGroup, keyBytes, keyOut.length(), valueBytes, valueOut.length());
+    }
+
+    public boolean remove(K key, int keyGroup) throws IOException {
+        Table table = tables.get(keyGroup - keyGroupRange.getStartKeyGroup());
+        if (table == null) {
+            return false;
+        }
+        byte[] keyBytes = serialize(keySerializer, key, keyOut);
+        int slot = table.find(Hash(keyBytes, keyOut.length()), keyBytes, keyOut.length());
+        if (slot < 0) {
+            return false;
+        }
+        table.remove(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * Number of keys of all key groups.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Bytes of all pages allocated by the map and its open snapshots.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Adds the entries of the key group written by {@link Snapshot#write}.
+     */
+    public void readKeyGroup(int keyGroup, DataInputView in) throws IOException {
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            byte[] keyBytes = new byte[in.readInt()];
+            in.readFully(keyBytes);
+            byte[] valueBytes = new byte[in.readInt()];
+            in.readFully(valueBytes);
+            put(keyGroup, keyBytes, keyBytes.length, valueBytes, valueBytes.length);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (int i = 0; i < tables.size(); i++) {
+            if (tables.get(i) != null) {
+                tables.get(i).release();
+                tables.set(i, null);
+            }
+        }
+    }
+
+    private void put(int keyGroup, byte[] keyBytes, int keyLength, byte[] valueBytes, int valueLength) {
+        if (HEADER_BYTES + keyLength + valueLength > pageSize) {
+            throw new IllegalArgumentException("Entry of " + (keyLength + valueLength)
+                    + " bytes does not fit into a page of " + pageSize + " bytes.");
+        }
+        int index = keyGroup - keyGroupRange.getStartKeyGroup();
+        Table table = tables.get(index);
+        if (table == null) {
+            table = new Table();
+            tables.set(index, table);
+        }
+
+        int hash = Hash(keyBytes, keyLength);
+        int slot = table.find(hash, keyBytes, keyLength);
+        if (slot >= 0) {
+            int address = Address(table.slot(slot));
+            int offset = address % pageSize;
+            int oldValueLength = table.data.get(address / pageSize).segment.getInt(offset + 4);
+            if (oldValueLength == valueLength) {
+                MemorySegment page = table.writableData(address / pageSize);
+                page.put(offset + HEADER_BYTES + keyLength, valueBytes, 0, valueLength);
+                return;
+            }
+            table.garbageBytes += HEADER_BYTES + keyLength + oldValueLength;
+            table.liveBytes -= HEADER_BYTES + keyLength + oldValueLength;
+            table.setSlot(slot, Slot(hash, table.append(keyBytes, keyLength, valueBytes, valueLength)));
+            table.compactIfWasteful();
+        } else {
+            table.setSlot(-slot - 1, Slot(hash, table.append(keyBytes, keyLength, valueBytes, valueLength)));
+            table.size++;
+            size++;
+            if (table.size > table.capacity * LOAD_FACTOR) {
+                table.resize(table.capacity * 2);
+            }
+        }
+    }
+
+    private static <T> byte[] serialize(TypeSerializer<T> serializer, T value, DataOutputSerializer out)
+            throws IOException {
+        out.clear();
+        serializer.serialize(value, out);
+        return out.getSharedBuffer();
+    }
+
+    private static int Hash(byte[] bytes, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return MathUtils.murmurHash(hash);
+    }
+
+    private static long Slot(int hash, int address) {
+        //address + 1, so that no used slot is EMPTY
+        return ((long) hash << 32) | ((address + 1) & 0xFFFFFFFFL);
+    }
+
+    private static int Address(long slot) {
+        return (int) slot - 1;
+    }
+
+    private static int SlotHash(long slot) {
+        return (int) (slot >>> 32);
+    }
+
+    private Page allocate(int bytes) {
+        if (allocatedBytes.addAndGet(bytes) > maxBytes) {
+            allocatedBytes.addAndGet(-bytes);
+            throw new IllegalStateException("The off-heap state budget of " + maxBytes + " bytes is used up.");
+        }
+        return new Page(MemorySegmentFactory.allocateOffHeapUnsafeMemory(bytes, this));
+    }
+
+    private void releasePage(Page page) {
+        if (page.refs.decrementAndGet() == 0) {
+            allocatedBytes.addAndGet(-page.segment.size());
+            page.segment.free();
+        }
+    }
+
+    /**
+     * A page, shared by the map and the snapshots that reference it.
+     */
+    private static final class Page {
+        final MemorySegment segment;
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Page(MemorySegment segment) {
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * The slots and entries of one key group.
+     */
+    private final class Table {
+        Page[] index;
+        int capacity;
+        int mask;
+        int size;
+        List<Page> data = new ArrayList<>();
+        int tail;
+        long liveBytes;
+        long garbageBytes;
+
+        Table() {
+            allocateIndex(INITIAL_CAPACITY);
+        }
+
+        private void allocateIndex(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            int bytes = capacity * 8;
+            index = new Page[Math.max(1, bytes / pageSize)];
+            for (int i = 0; i < index.length; i++) {
+                index[i] = allocate(Math.min(bytes, pageSize));
+                MemorySegment segment = index[i].segment;
+                //unsafe memory is not zeroed
+                for (int offset = 0; offset < segment.size(); offset += 8) {
+                    segment.putLong(offset, EMPTY);
+                }
+            }
+        }
+
+        long slot(int slot) {
+            return index[slot / slotsPerPage].segment.getLong((slot % slotsPerPage) * 8);
+        }
+
+        void setSlot(int slot, long value) {
+            int page = slot / slotsPerPage;
+            if (index[page].refs.get() > 1) {
+                index[page] = copy(index[page]);
+            }
+            index[page].segment.putLong((slot % slotsPerPage) * 8, value);
+        }
+
+        MemorySegment writableData(int page) {
+            Page current = data.get(page);
+            if (current.refs.get() > 1) {
+                current = copy(current);
+                data.set(page, current);
+            }
+            return current.segment;
+        }
+
+        private Page copy(Page shared) {
+            Page copy = allocate(shared.segment.size());
+            shared.segment.copyTo(0, copy.segment, 0, shared.segment.size());
+            releasePage(shared);
+            return copy;
+        }
+
+        /**
+         * The slot of the key, or -(slot to insert it) - 1.
+         */
+        int find(int hash, byte[] keyBytes, int keyLength) {
+            int slot = hash & mask;
+            while (true) {
+                long value = slot(slot);
+                if (value == EMPTY) {
+                    return -slot - 1;
+                }
+                if (SlotHash(value) == hash && keyEquals(Address(value), keyBytes, keyLength)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private boolean keyEquals(int address, byte[] keyBytes, int keyLength) {
+            MemorySegment page = data.get(address / pageSize).segment;
+            int offset = address % pageSize;
+            if (page.getInt(offset) != keyLength) {
+                return false;
+            }
+            offset += HEADER_BYTES;
+            for (int i = 0; i < keyLength; i++) {
+                if (page.get(offset + i) != keyBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int append(byte[] keyBytes, int keyLength, byte[] valueBytes, int valueLength) {
+            int length = HEADER_BYTES + keyLength + valueLength;
+            if (data.isEmpty() || tail + length > pageSize) {
+                data.add(allocate(pageSize));
+                tail = 0;
+            }
+            MemorySegment page = writableData(data.size() - 1);
+            page.putInt(tail, keyLength);
+            page.putInt(tail + 4, valueLength);
+            page.put(tail + HEADER_BYTES, keyBytes, 0, keyLength);
+            page.put(tail + HEADER_BYTES + keyLength, valueBytes, 0, valueLength);
+
+            int address = (data.size() - 1) * pageSize + tail;
+            tail += length;
+            liveBytes += length;
+            return address;
+        }
+
+        /**
+         * Backward shift deletion: moves the following entries of the probe sequence up, so no tombstones are
+         * needed.
+         */
+        void remove(int slot) {
+            int address = Address(slot(slot));
+            MemorySegment page = data.get(address / pageSize).segment;
+            int offset = address % pageSize;
+            int length = HEADER_BYTES + page.getInt(offset) + page.getInt(offset + 4);
+            liveBytes -= length;
+            garbageBytes += length;
+            size--;
+
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long value = slot(next);
+                if (value == EMPTY) {
+                    break;
+                }
+                int home = SlotHash(value) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    setSlot(hole, value);
+                    hole = next;
+                }
+            }
+            setSlot(hole, EMPTY);
+            compactIfWasteful();
+        }
+
+        void resize(int newCapacity) {
+            Page[] oldIndex = index;
+            int oldCapacity = capacity;
+            allocateIndex(newCapacity);
+            int oldSlotsPerPage = Math.min(slotsPerPage, oldCapacity);
+            for (Page page : oldIndex) {
+                for (int i = 0; i < oldSlotsPerPage; i++) {
+                    long value = page.segment.getLong(i * 8);
+                    if (value != EMPTY) {
+                        int slot = SlotHash(value) & mask;
+                        while (slot(slot) != EMPTY) {
+                            slot = (slot + 1) & mask;
+                        }
+                        setSlot(slot, value);
+                    }
+                }
+                releasePage(page);
+            }
+        }
+
+        /**
+         * Copies the live entries to new pages once the garbage outweighs them.
+         */
+        void compactIfWasteful() {
+            if (garbageBytes <= liveBytes || garbageBytes < pageSize) {
+                return;
+            }
+            List<Page> oldData = data;
+            data = new ArrayList<>();
+            tail = 0;
+            liveBytes = 0;
+            garbageBytes = 0;
+            byte[] keyBytes = new byte[pageSize];
+            byte[] valueBytes = new byte[pageSize];
+            for (int slot = 0; slot < capacity; slot++) {
+                long value = slot(slot);
+                if (value == EMPTY) {
+                    continue;
+                }
+                int address = Address(value);
+                MemorySegment page = oldData.get(address / pageSize).segment;
+                int offset = address % pageSize;
+                int keyLength = page.getInt(offset);
+                int valueLength = page.getInt(offset + 4);
+                page.get(offset + HEADER_BYTES, keyBytes, 0, keyLength);
+                page.get(offset + HEADER_BYTES + keyLength, valueBytes, 0, valueLength);
+                setSlot(slot, Slot(SlotHash(value), append(keyBytes, keyLength, valueBytes, valueLength)));
+            }
+            for (Page page : oldData) {
+                releasePage(page);
+            }
+        }
+
+        void release() {
+            for (Page page : index) {
+                releasePage(page);
+            }
+            for (Page page : data) {
+                releasePage(page);
+            }
+        }
+    }
+
+    /**
+     * Copy-on-write snapshot of the map, see {@link #snapshot()}.
+     */
+    public final class Snapshot implements AutoCloseable {
+
+        private final Page[][] indexes = new Page[tables.size()][];
+        private final int[] capacities = new int[tables.size()];
+        private final int[] sizes = new int[tables.size()];
+        private final List<List<Page>> data = new ArrayList<>(tables.size());
+        private boolean closed;
+
+        private Snapshot() {
+            for (int i = 0; i < tables.size(); i++) {
+                Table table = tables.get(i);
+                if (table == null) {
+                    data.add(null);
+                    continue;
+                }
+                indexes[i] = table.index.clone();
+                capacities[i] = table.capacity;
+                sizes[i] = table.size;
+                data.add(new ArrayList<>(table.data));
+                for (Page page : indexes[i]) {
+                    page.refs.incrementAndGet();
+                }
+                for (Page page : data.get(i)) {
+                    page.refs.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Writes the entries of the key group as serialized by the key and value serializers.
+         */
+        public void write(int keyGroup, DataOutputView out) throws IOException {
+            int i = keyGroup - keyGroupRange.getStartKeyGroup();
+            if (closed) {
+                throw new IllegalStateException("The snapshot is closed.");
+            }
+            out.writeInt(sizes[i]);
+            if (indexes[i] == null) {
+                return;
+            }
+            for (int slot = 0; slot < capacities[i]; slot++) {
+                long value = indexes[i][slot / slotsPerPage].segment.getLong((slot % slotsPerPage) * 8);
+                if (value == EMPTY) {
+                    continue;
+                }
+                int address = Address(value);
+                MemorySegment page = data.get(i).get(address / pageSize).segment;
+                int offset = address % pageSize;
+                int keyLength = page.getInt(offset);
+                int valueLength = page.getInt(offset + 4);
+                out.writeInt(keyLength);
+                page.get(out, offset + HEADER_BYTES, keyLength);
+                out.writeInt(valueLength);
+                page.get(out, offset + HEADER_BYTES + keyLength, valueLength);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (int i = 0; i < indexes.length; i++) {
+                if (indexes[i] == null) {
+                    continue;
+                }
+                for (Page page : indexes[i]) {
+                    releasePage(page);
+                }
+                for (Page page : data.get(i)) {
+                    releasePage(page);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.util;
+
+import org.apache.flink.configuration.ConfigOption;
+import org.apache.flink.configuration.ConfigOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.MemorySize;
+import org.apache.flink.configuration.ReadableConfig;
+import org.apache.flink.contrib.streaming.state.ConfigurableRocksDBOptionsFactory;
+import org.apache.flink.contrib.streaming.state.RocksDBNativeMetricOptions;
+import org.apache.flink.contrib.streaming.state.RocksDBOptions;
+import org.apache.flink.contrib.streaming.state.RocksDBOptionsFactory;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.CompactionStyle;
+import org.rocksdb.DBOptions;
+import org.rocksdb.DataBlockIndexType;
+import org.rocksdb.Statistics;
+import org.rocksdb.StatsLevel;
+import org.rocksdb.TableFormatConfig;
+
+import java.util.Collection;
+
+/**
+ * RocksDB options for jobs that mostly read and update small values by key, like the counters and sums of the
+ * examples: whole key bloom filters, so a get of a key that is not in an sst file mostly skips it without a
+ * block read, small blocks with a hash index, and level compaction with dynamic level sizes, which keeps the
+ * number of files a lookup can hit low.
+ *
+ * <p>The block cache and the write buffers are left to Flink, which shares one cache and write buffer manager per
+ * slot bounded by the managed memory ({@link #Configure} makes sure that is on) and keeps the filter and index
+ * blocks in it as well. The native metrics of memory, compaction and the estimated number of keys are switched on,
+ * and with statistics the RocksDB ticker and histogram statistics are dumped to the RocksDB LOG.
+ */
+public class PointLookupRocksDBOptionsFactory implements ConfigurableRocksDBOptionsFactory {
+
+    public static final ConfigOption<Double> BLOOM_BITS_PER_KEY =
+            ConfigOptions.key("state.backend.rocksdb.point-lookup.bloom-bits-per-key").doubleType()
+                    .defaultValue(10.0);
+
+    public static final ConfigOption<MemorySize> BLOCK_SIZE =
+            ConfigOptions.key("state.backend.rocksdb.point-lookup.block-size").memoryType()
+                    .defaultValue(MemorySize.parse("4kb"));
+
+    public static final ConfigOption<Integer> BACKGROUND_JOBS =
+            ConfigOptions.key("state.backend.rocksdb.point-lookup.background-jobs").intType().defaultValue(4);
+
+    public static final ConfigOption<Boolean> STATISTICS =
+            ConfigOptions.key("state.backend.rocksdb.point-lookup.statistics").booleanType().defaultValue(false);
+
+    private double bloomBitsPerKey = BLOOM_BITS_PER_KEY.defaultValue();
+    private long blockSize = BLOCK_SIZE.defaultValue().getBytes();
+    private int backgroundJobs = BACKGROUND_JOBS.defaultValue();
+    private boolean statistics = STATISTICS.defaultValue();
+
+    /**
+     * Selects this factory for the RocksDB backend and has its memory managed by Flink.
+     */
+    public static void Configure(Configuration config) {
+        config.setString(RocksDBOptions.OPTIONS_FACTORY.key(), PointLookupRocksDBOptionsFactory.class.getName());
+        config.set(RocksDBOptions.USE_MANAGED_MEMORY, true);
+    }
+
+    @Override
+    public RocksDBOptionsFactory configure(ReadableConfig configuration) {
+        bloomBitsPerKey = configuration.get(BLOOM_BITS_PER_KEY);
+        blockSize = configuration.get(BLOCK_SIZE).getBytes();
+        backgroundJobs = configuration.get(BACKGROUND_JOBS);
+        statistics = configuration.get(STATISTICS);
+        return this;
+    }
+
+    @Override
+    public DBOptions createDBOptions(DBOptions currentOptions, Collection<AutoCloseable> handlesToClose) {
+        currentOptions
+                .setMaxBackgroundJobs(backgroundJobs)
+                .setMaxOpenFiles(-1)
+                .setUseFsync(false);
+        if (statistics) {
+            Statistics stats = new Statistics();
+            stats.setStatsLevel(StatsLevel.EXCEPT_DETAILED_TIMERS);
+            handlesToClose.add(stats);
+            currentOptions.setStatistics(stats).setStatsDumpPeriodSec(60);
+        }
+        return currentOptions;
+    }
+
+    @Override
+    public ColumnFamilyOptions createColumnOptions(ColumnFamilyOptions currentOptions,
+                                                   Collection<AutoCloseable> handlesToClose) {
+        //Flink sets its shared block cache on the table config of the returned options, start from the current one
+        TableFormatConfig current = currentOptions.tableFormatConfig();
+        BlockBasedTableConfig table = current instanceof BlockBasedTableConfig
+                ? (BlockBasedTableConfig) current
+                : new BlockBasedTableConfig();
+
+        BloomFilter bloomFilter = new BloomFilter(bloomBitsPerKey, false);
+        handlesToClose.add(bloomFilter);
+        table.setFilterPolicy(bloomFilter)
+                .setWholeKeyFiltering(true)
+                .setBlockSize(blockSize)
+                .setDataBlockIndexType(DataBlockIndexType.kDataBlockBinaryAndHash)
+                .setDataBlockHashTableUtilRatio(0.75);
+
+        return currentOptions
+                .setTableFormatConfig(table)
+                //the filters of the last level answer the lookups of new keys too
+                .setOptimizeFiltersForHits(false)
+                .setCompactionStyle(CompactionStyle.LEVEL)
+                .setLevelCompactionDynamicLevelBytes(true)
+                .setTargetFileSizeBase(64L << 20)
+                .setMaxBytesForLevelBase(256L << 20);
+    }
+
+    @Override
+    public RocksDBNativeMetricOptions createNativeMetricsOptions(RocksDBNativeMetricOptions nativeMetricOptions) {
+        nativeMetricOptions.enableBlockCacheUsage();
+        nativeMetricOptions.enableBlockCachePinnedUsage();
+        nativeMetricOptions.enableBlockCacheCapacity();
+        nativeMetricOptions.enableSizeAllMemTables();
+        nativeMetricOptions.enableEstimateTableReadersMem();
+        nativeMetricOptions.enableEstimateNumKeys();
+        nativeMetricOptions.enableEstimateLiveDataSize();
+        nativeMetricOptions.enableTotalSstFilesSize();
+        nativeMetricOptions.enableCompactionPending();
+        nativeMetricOptions.enableEstimatePendingCompactionBytes();
+        nativeMetricOptions.enableNumRunningCompactions();
+        nativeMetricOptions.enableIsWriteStopped();
+        return nativeMetricOptions;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Counts of string keys, exact or bounded by the space-saving algorithm of Metwally et al.
+ *
+ * <p>With a capacity the sketch keeps at most capacity counters in a min-heap indexed by a hash map. A key that is
+ * not counted yet replaces the smallest counter and inherits its count as error, so every count is an overestimate
+ * by at most its error, and every key with a true count above total / capacity is kept. With capacity 0 or less
+ * every key is counted exactly.
+ */
+public class SpaceSaving {
+
+    /**
+     * Count of one key, count - error is a lower bound of the true count.
+     */
+    public static class Counter {
+        public String key;
+        public long count;
+        public long error;
+        transient int heapIndex;
+
+        public Counter() {
+        }
+
+        public Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + (error > 0 ? "(±" + error + ")" : "");
+        }
+    }
+
+    private static final Comparator<Counter> BY_COUNT = Comparator.comparingLong((Counter c) -> c.count)
+            .thenComparing(c -> c.key, Comparator.reverseOrder());
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    // rebuilt from the counters after deserialization, so a sketch in Flink state serializes as the map only
+    private transient Counter[] heap;
+    private long total;
+
+    public SpaceSaving() {
+        this(0);
+    }
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(String key) {
+        add(key, 1, 0);
+    }
+
+    public void add(String key, long count, long error) {
+        total += count;
+        if (heap == null && capacity > 0) {
+            rebuildHeap();
+        }
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            if (heap != null) {
+                siftDown(counter.heapIndex);
+            }
+            return;
+        }
+
+        if (heap == null) {
+            counters.put(key, new Counter(key, count, error));
+        } else if (counters.size() < capacity) {
+            counter = new Counter(key, count, error);
+            counter.heapIndex = counters.size();
+            heap[counter.heapIndex] = counter;
+            counters.put(key, counter);
+            siftUp(counter.heapIndex);
+        } else {
+            // evict the smallest counter, the new key may have been counted that often before
+            counter = heap[0];
+            counters.remove(counter.key);
+            long evicted = counter.count;
+            counter.key = key;
+            counter.count = evicted + count;
+            counter.error = evicted + error;
+            counters.put(key, counter);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds the counters of another sketch, the errors add up.
+     */
+    public void merge(SpaceSaving other) {
+        for (Counter counter : other.counters.values()) {
+            add(counter.key, counter.count, counter.error);
+        }
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * The k largest counters, largest first.
+     */
+    public List<Counter> top(int k) {
+        return top(counters.values(), k);
+    }
+
+    public static List<Counter> top(Collection<Counter> counters, int k) {
+        PriorityQueue<Counter> smallestFirst = new PriorityQueue<>(k + 1, BY_COUNT);
+        for (Counter counter : counters) {
+            if (smallestFirst.size() < k) {
+                smallestFirst.add(counter);
+            } else if (BY_COUNT.compare(counter, smallestFirst.peek()) > 0) {
+                smallestFirst.poll();
+                smallestFirst.add(counter);
+            }
+        }
+        List<Counter> top = new ArrayList<>(smallestFirst.size());
+        while (!smallestFirst.isEmpty()) {
+            Counter counter = smallestFirst.poll();
+            top.add(new Counter(counter.key, counter.count, counter.error));
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    private void rebuildHeap() {
+        heap = new Counter[capacity];
+        int i = 0;
+        for (Counter counter : counters.values()) {
+            place(counter, i++);
+        }
+        for (int parent = (counters.size() >>> 1) - 1; parent >= 0; parent--) {
+            siftDown(parent);
+        }
+    }
+
+    private void siftUp(int i) {
+        Counter counter = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (BY_COUNT.compare(heap[parent], counter) <= 0) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(counter, i);
+    }
+
+    private void siftDown(int i) {
+        int size = counters.size();
+        Counter counter = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && BY_COUNT.compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (BY_COUNT.compare(counter, heap[child]) <= 0) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(counter, i);
+    }
+
+    private void place(Counter counter, int i) {
+        heap[i] = counter;
+        counter.heapIndex = i;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package myflink.util;
+
+import org.apache.flink.api.common.state.StateDescriptor;
+import org.apache.flink.api.common.state.StateTtlConfig;
+import org.apache.flink.api.common.time.Time;
+import org.apache.flink.api.java.utils.ParameterTool;
+
+import java.io.Serializable;
+
+/**
+ * Time to live of the per word state of the word count examples, so that words not seen for ttl are dropped and
+ * the state follows the active vocabulary instead of every word ever seen.
+ *
+ * <p>Expired entries are never returned, and removed
+ * <ul>
+ * <li>on the heap (filesystem backend) incrementally: every state access also checks incrementalEntries entries
+ * of the state table, and full snapshots leave them out,</li>
+ * <li>with RocksDB by the compaction filter, which rereads the current time every compactionQueries entries.</li>
+ * </ul>
+ * With NDB expired rows are only hidden, they stay in the shared state table until they are overwritten.
+ *
+ * <p>TTL wraps the values with their timestamp, switching it on or off needs a start without the old state.
+ */
+public class StateTtlProfile implements Serializable {
+
+    private final long ttlMillis;
+    private final int incrementalEntries;
+    private final long compactionQueries;
+    private final boolean refreshOnRead;
+
+    public StateTtlProfile(long ttlMillis, int incrementalEntries, long compactionQueries, boolean refreshOnRead) {
+        this.ttlMillis = ttlMillis;
+        this.incrementalEntries = incrementalEntries;
+        this.compactionQueries = compactionQueries;
+        this.refreshOnRead = refreshOnRead;
+    }
+
+    /**
+     * --ttl in millis (0, no expiry), --ttlentries checked per access on the heap (10), --ttlqueries entries
+     * between time queries of the RocksDB compaction filter (1000) and --ttlread true to also extend the ttl of an
+     * entry when it is read, not only when it is written.
+     */
+    public static StateTtlProfile fromParameters(ParameterTool params) {
+        return new StateTtlProfile(
+                params.getLong("ttl", 0),
+                params.getInt("ttlentries", 10),
+                params.getLong("ttlqueries", 1000),
+                params.getBoolean("ttlread", false));
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Enables the ttl on the descriptor, if the profile is enabled. Returns the descriptor.
+     */
+    public <D extends StateDescriptor<?, ?>> D apply(D descriptor) {
+        if (isEnabled()) {
+            descriptor.enableTimeToLive(toConfig());
+        }
+        return descriptor;
+    }
+
+    public StateTtlConfig toConfig() {
+        return StateTtlConfig.newBuilder(Time.milliseconds(ttlMillis))
+                .setUpdateType(refreshOnRead
+                        ? StateTtlConfig.UpdateType.OnReadAndWrite
+                        : StateTtlConfig.UpdateType.OnCreateAndWrite)
+                .setStateVisibility(StateTtlConfig.StateVisibility.NeverReturnExpired)
+                .cleanupFullSnapshot()
+                .cleanupIncrementally(incrementalEntries, false)
+                .cleanupInRocksdbCompactFilter(compactionQueries)
+                .build();
+    }
+}
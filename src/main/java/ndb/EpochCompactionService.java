@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ndb;
+
+import com.mysql.clusterj.Query;
+import com.mysql.clusterj.Session;
+import com.mysql.clusterj.SessionFactory;
+import com.mysql.clusterj.query.QueryDomainType;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.MeterView;
+import org.apache.flink.metrics.MetricGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background garbage collection of superseded epochs in the NDB state tables.
+ *
+ * <p>Every pass deletes the superseded rows, key group by key group, in batches of at most batchSize rows: a row
+ * is superseded when the same (stateName, nameSpace, key) also has a row of a newer epoch up to the latest
+ * completed checkpoint. The latest completed row of every key stays, however long ago it was written, and rows
+ * of epochs after the latest completed checkpoint are not looked at.
+ *
+ * <p>The key groups are spread over parallelSessions worker threads with one ClusterJ session each, and all
+ * workers share one rows per second budget, so the cleanup never competes with the foreground state accesses
+ * for more than that rate. The workers run as low priority daemon threads.
+ *
+ * <p>Feed the completed checkpoints with {@link #onCheckpointComplete(long)}, e.g. from a CheckpointListener.
+ */
+public class EpochCompactionService implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EpochCompactionService.class);
+
+    private final SessionFactory sessionFactory;
+    private final Class<?> table;
+    private final int numberOfKeyGroups;
+    private final int batchSize;
+    private final int parallelSessions;
+    private final RateLimiter rateLimiter;
+
+    private final AtomicLong latestCompletedEpoch = new AtomicLong(-1);
+    private final AtomicLong compactedEpoch = new AtomicLong(-1);
+    private final AtomicInteger backlogKeyGroups = new AtomicInteger();
+    private final RowCounter deletedRows = new RowCounter();
+    private volatile double lastPassRowsPerSecond;
+
+    private ScheduledExecutorService coordinator;
+    private ExecutorService workers;
+    private final List<Session> sessions = new ArrayList<>();
+
+    /**
+     * @param table             KeyValueCommitted.class or KeyValue.class
+     * @param numberOfKeyGroups the max parallelism of the job, key groups are 0 .. numberOfKeyGroups - 1
+     * @param maxRowsPerSecond  delete budget of all workers together, 0 or less for no limit
+     */
+    public EpochCompactionService(SessionFactory sessionFactory, Class<?> table, int numberOfKeyGroups,
+                                  int batchSize, int parallelSessions, double maxRowsPerSecond) {
+        this.sessionFactory = sessionFactory;
+        this.table = table;
+        this.numberOfKeyGroups = numberOfKeyGroups;
+        this.batchSize = batchSize;
+        this.parallelSessions = parallelSessions;
+        this.rateLimiter = new RateLimiter(maxRowsPerSecond);
+    }
+
+    /**
+     * Checks every intervalMillis whether a newer checkpoint completed and compacts up to it.
+     */
+    public synchronized void start(long intervalMillis) {
+        workers = Executors.newFixedThreadPool(parallelSessions, threads("ndb-epoch-compaction-worker"));
+        coordinator = Executors.newSingleThreadScheduledExecutor(threads("ndb-epoch-compaction"));
+        coordinator.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (Exception e) {
+                LOG.warn("Epoch compaction pass failed, retrying with the next pass.", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void onCheckpointComplete(long epoch) {
+        latestCompletedEpoch.accumulateAndGet(epoch, Math::max);
+    }
+
+    /**
+     * One pass over all key groups, blocking until it is done. Returns the number of deleted rows.
+     */
+    public long compact() throws Exception {
+        long epoch = latestCompletedEpoch.get();
+        if (epoch <= compactedEpoch.get()) {
+            return 0;
+        }
+
+        ExecutorService pool = workers != null ? workers
+                : Executors.newFixedThreadPool(parallelSessions, threads("ndb-epoch-compaction-worker"));
+        long before = deletedRows.getCount();
+        long start = System.nanoTime();
+        try {
+            backlogKeyGroups.set(numberOfKeyGroups);
+            List<Future<?>> keyGroups = new ArrayList<>(numberOfKeyGroups);
+            for (int kg = 0; kg < numberOfKeyGroups; kg++) {
+                final int keyGroup = kg;
+                keyGroups.add(pool.submit(() -> {
+                    compactKeyGroup(keyGroup, epoch);
+                    backlogKeyGroups.decrementAndGet();
+                    return null;
+                }));
+            }
+            for (Future<?> keyGroup : keyGroups) {
+                keyGroup.get();
+            }
+        } finally {
+            if (pool != workers) {
+                pool.shutdown();
+                closeSessions();
+            }
+        }
+        compactedEpoch.set(epoch);
+
+        long deleted = deletedRows.getCount() - before;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        lastPassRowsPerSecond = deleted / Math.max(seconds, 1e-9);
+        LOG.info("Compacted superseded epochs up to {} of {}: {} rows in {} s ({} rows/s)",
+                epoch, table.getSimpleName(), deleted, String.format("%.2f", seconds),
+                String.format("%.0f", lastPassRowsPerSecond));
+        return deleted;
+    }
+
+    private void compactKeyGroup(int keyGroup, long epoch) {
+        Session session = session();
+        Query<?> query = scanQuery(session);
+        query.setParameter("keyGroup", keyGroup);
+        query.setParameter("epoch", epoch);
+        List<?> rows = query.getResultList();
+
+        //the latest completed epoch of every key of the key group
+        Map<List<Object>, Long> latest = new HashMap<>();
+        for (Object row : rows) {
+            latest.merge(StateKey(row), Epoch(row), Math::max);
+        }
+
+        List<Object> superseded = new ArrayList<>(batchSize);
+        for (Object row : rows) {
+            if (Epoch(row) < latest.get(StateKey(row))) {
+                superseded.add(row);
+                if (superseded.size() == batchSize) {
+                    delete(session, superseded);
+                }
+            }
+        }
+        delete(session, superseded);
+    }
+
+    private void delete(Session session, List<Object> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        rateLimiter.acquire(rows.size());
+        session.deletePersistentAll(rows);
+        deletedRows.inc(rows.size());
+        rows.clear();
+    }
+
+    private Query<?> scanQuery(Session session) {
+        QueryDomainType<?> domain = session.getQueryBuilder().createQueryDefinition(table);
+        domain.where(domain.get("keyGroup").equal(domain.param("keyGroup"))
+                .and(domain.get("epoch").lessEqual(domain.param("epoch"))));
+        return session.createQuery(domain);
+    }
+
+    private static List<Object> StateKey(Object row) {
+        return Arrays.asList(Comparable(LocalClusterJ.getProperty(row, "stateName")),
+                Comparable(LocalClusterJ.getProperty(row, "nameSpace")),
+                Comparable(LocalClusterJ.getProperty(row, "key")));
+    }
+
+    private static long Epoch(Object row) {
+        return ((Number) LocalClusterJ.getProperty(row, "epoch")).longValue();
+    }
+
+    /**
+     * Binary columns compare by content.
+     */
+    private static Object Comparable(Object value) {
+        return value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+    }
+
+    private final ThreadLocal<Session> threadSession = new ThreadLocal<>();
+
+    private Session session() {
+        Session session = threadSession.get();
+        if (session == null || session.isClosed()) {
+            session = sessionFactory.getSession();
+            threadSession.set(session);
+            synchronized (sessions) {
+                sessions.add(session);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * compactionRowsPerSecond (meter over the deleted rows), compactionLastPassRowsPerSecond,
+     * compactionDeletedRows, compactionBacklogKeyGroups (key groups left in the running pass) and
+     * compactionBacklogEpochs (completed epochs not compacted yet).
+     */
+    public void registerMetrics(MetricGroup group) {
+        group.counter("compactionDeletedRows", deletedRows);
+        group.meter("compactionRowsPerSecond", new MeterView(deletedRows));
+        group.gauge("compactionLastPassRowsPerSecond", (Gauge<Double>) this::getLastPassRowsPerSecond);
+        group.gauge("compactionBacklogKeyGroups", (Gauge<Integer>) this::getBacklogKeyGroups);
+        group.gauge("compactionBacklogEpochs", (Gauge<Long>) this::getBacklogEpochs);
+    }
+
+    public long getDeletedRows() {
+        return deletedRows.getCount();
+    }
+
+    public double getLastPassRowsPerSecond() {
+        return lastPassRowsPerSecond;
+    }
+
+    public int getBacklogKeyGroups() {
+        return backlogKeyGroups.get();
+    }
+
+    public long getBacklogEpochs() {
+        return Math.max(0, latestCompletedEpoch.get() - Math.max(compactedEpoch.get(), 0));
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        if (coordinator != null) {
+            coordinator.shutdownNow();
+            coordinator.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        closeSessions();
+    }
+
+    private void closeSessions() {
+        synchronized (sessions) {
+            for (Session session : sessions) {
+                if (!session.isClosed()) {
+                    session.close();
+                }
+            }
+            sessions.clear();
+        }
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
+
+    /**
+     * Counter shared by the worker threads.
+     */
+    private static class RowCounter implements Counter {
+        private final AtomicLong count = new AtomicLong();
+
+        @Override
+        public void inc() {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void inc(long n) {
+            count.addAndGet(n);
+        }
+
+        @Override
+        public void dec() {
+            count.decrementAndGet();
+        }
+
+        @Override
+        public void dec(long n) {
+            count.addAndGet(-n);
+        }
+
+        @Override
+        public long getCount() {
+            return count.get();
+        }
+    }
+
+    /**
+     * Paces the callers to permitsPerSecond, a burst is limited to one second worth of permits.
+     */
+    static class RateLimiter {
+        private final double permitsPerSecond;
+        private long nextFreeNanos = System.nanoTime();
+
+        RateLimiter(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+        }
+
+        void acquire(int permits) {
+            if (permitsPerSecond <= 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFreeNanos = Math.max(nextFreeNanos, now - 1_000_000_000L);
+                wait = nextFreeNanos - now;
+                nextFreeNanos += (long) (permits * 1e9 / permitsPerSecond);
+            }
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
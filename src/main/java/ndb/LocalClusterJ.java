@@ -0,0 +1,683 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ndb;
+
+import com.mysql.clusterj.Query;
+import com.mysql.clusterj.Session;
+import com.mysql.clusterj.SessionFactory;
+import com.mysql.clusterj.Transaction;
+import com.mysql.clusterj.query.Predicate;
+import com.mysql.clusterj.query.PredicateOperand;
+import com.mysql.clusterj.query.QueryBuilder;
+import com.mysql.clusterj.query.QueryDomainType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntPredicate;
+
+/**
+ * Embedded stand-in for a RonDB / MySQL Cluster behind the ClusterJ {@link SessionFactory}, {@link Session} and
+ * {@link Query} interfaces, so code written against ClusterJ runs on one box without a cluster:
+ * <pre>
+ * props.setProperty("com.mysql.clusterj.database", "flinkndb");
+ * props.setProperty(LocalClusterJ.RTT_MICROS, "200");
+ * SessionFactory factory = LocalClusterJ.getSessionFactory(props);
+ * </pre>
+ * Like ClusterJ itself, the domain interfaces (KeyValue, KeyValueCommitted) are implemented with dynamic proxies
+ * over a property map. Queries support equal / greaterThan / greaterEqual / lessThan / lessEqual / between /
+ * isNull / isNotNull combined with and / or / not, plus setLimits. Equality on leading primary key columns turns
+ * the query into a range scan, see {@link LocalNdbStore}. Anything else throws UnsupportedOperationException.
+ *
+ * <p>Sessions of factories with the same database name share their tables, like sessions of a real cluster.
+ */
+public class LocalClusterJ {
+
+    /**
+     * Simulated round trip time in microseconds, waited once per save, query and delete call. A setting of the
+     * session factory, factories of one database with different RTTs still share the tables.
+     */
+    public static final String RTT_MICROS = "com.mysql.clusterj.local.rtt.micros";
+
+    private static final Map<String, LocalNdbStore> databases = new ConcurrentHashMap<>();
+
+    public static SessionFactory getSessionFactory(Properties props) {
+        LocalNdbStore store = getStore(props.getProperty("com.mysql.clusterj.database", "flinkndb"));
+        long rttNanos = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(props.getProperty(RTT_MICROS, "0")));
+        return proxy(SessionFactory.class, new SessionFactoryHandler(store, rttNanos));
+    }
+
+    /**
+     * The tables of a database, e.g. to seed rows without a session.
+     */
+    public static LocalNdbStore getStore(String database) {
+        return databases.computeIfAbsent(database, name -> new LocalNdbStore());
+    }
+
+    /**
+     * Sets a property through the setter of the domain interface, converting the value to the parameter type.
+     * Works for LocalClusterJ and ClusterJ instances alike.
+     */
+    public static void setProperty(Object instance, String property, Object value) {
+        String setter = "set" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (Class<?> type : instance.getClass().getInterfaces()) {
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(setter) && method.getParameterCount() == 1) {
+                    try {
+                        method.invoke(instance, coerce(value, method.getParameterTypes()[0]));
+                        return;
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalArgumentException("Can not set " + property, e);
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("No setter for " + property + " on " + instance.getClass());
+    }
+
+    /**
+     * Reads a property through the getter of the domain interface. Works for LocalClusterJ and ClusterJ instances
+     * alike.
+     */
+    public static Object getProperty(Object instance, String property) {
+        String getter = "get" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+        for (Class<?> type : instance.getClass().getInterfaces()) {
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(getter) && method.getParameterCount() == 0) {
+                    try {
+                        return method.invoke(instance);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalArgumentException("Can not get " + property, e);
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("No getter for " + property + " on " + instance.getClass());
+    }
+
+    /**
+     * Simulated network round trip to the data nodes.
+     */
+    private static void roundTrip(long rttNanos) {
+        if (rttNanos > 0) {
+            LockSupport.parkNanos(rttNanos);
+        }
+    }
+
+    //region proxies
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(LocalClusterJ.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <H> H handlerOf(Object proxy, Class<H> handlerType) {
+        if (proxy == null || !Proxy.isProxyClass(proxy.getClass())
+                || !handlerType.isInstance(Proxy.getInvocationHandler(proxy))) {
+            throw new IllegalArgumentException(proxy + " was not created by LocalClusterJ");
+        }
+        return (H) Proxy.getInvocationHandler(proxy);
+    }
+
+    /**
+     * Base handler answering the Object methods and rejecting everything the stand-in does not implement.
+     */
+    private abstract static class Handler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object[] a = args == null ? new Object[0] : args;
+            switch (method.getName()) {
+                case "equals":
+                    if (a.length == 1) {
+                        return proxy == a[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (a.length == 0) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "toString":
+                    if (a.length == 0) {
+                        return describe();
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return handle(proxy, method, a);
+        }
+
+        abstract Object handle(Object proxy, Method method, Object[] args) throws Exception;
+
+        String describe() {
+            return getClass().getSimpleName();
+        }
+
+        static UnsupportedOperationException unsupported(Method method) {
+            return new UnsupportedOperationException(
+                    method.getDeclaringClass().getSimpleName() + "." + method.getName() + " is not supported by LocalClusterJ");
+        }
+    }
+
+    private static class SessionFactoryHandler extends Handler {
+        private final LocalNdbStore store;
+        private final long rttNanos;
+        private boolean open = true;
+
+        SessionFactoryHandler(LocalNdbStore store, long rttNanos) {
+            this.store = store;
+            this.rttNanos = rttNanos;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getSession":
+                    if (!open) {
+                        throw new IllegalStateException("SessionFactory is closed");
+                    }
+                    return LocalClusterJ.proxy(Session.class, new SessionHandler(store, rttNanos));
+                case "close":
+                    open = false;
+                    return null;
+                default:
+                    throw unsupported(method);
+            }
+        }
+    }
+
+    private static class SessionHandler extends Handler {
+        private final LocalNdbStore store;
+        private final long rttNanos;
+        private boolean closed;
+        private boolean transactionActive;
+
+        SessionHandler(LocalNdbStore store, long rttNanos) {
+            this.store = store;
+            this.rttNanos = rttNanos;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            if (closed && !method.getName().equals("isClosed")) {
+                throw new IllegalStateException("Session is closed");
+            }
+            switch (method.getName()) {
+                case "newInstance":
+                    if (args.length == 1) {
+                        return newEntity((Class<?>) args[0], new HashMap<>());
+                    }
+                    throw unsupported(method);
+                case "savePersistent":
+                case "makePersistent":
+                case "updatePersistent":
+                case "persist":
+                    roundTrip(rttNanos);
+                    save(args[0]);
+                    return method.getReturnType() == void.class ? null : args[0];
+                case "savePersistentAll":
+                case "makePersistentAll":
+                case "updatePersistentAll":
+                    roundTrip(rttNanos);
+                    for (Object entity : (Iterable<?>) args[0]) {
+                        save(entity);
+                    }
+                    return method.getReturnType() == void.class ? null : args[0];
+                case "deletePersistent":
+                case "remove":
+                    if (args.length != 1) {
+                        throw unsupported(method);
+                    }
+                    roundTrip(rttNanos);
+                    EntityHandler entity = handlerOf(args[0], EntityHandler.class);
+                    store.delete(entity.type, entity.values);
+                    return null;
+                case "deletePersistentAll":
+                    roundTrip(rttNanos);
+                    if (args[0] instanceof Class) {
+                        return store.deleteMatching((Class<?>) args[0], new ArrayList<>(), row -> true, Long.MAX_VALUE);
+                    }
+                    for (Object e : (Iterable<?>) args[0]) {
+                        EntityHandler h = handlerOf(e, EntityHandler.class);
+                        store.delete(h.type, h.values);
+                    }
+                    return null;
+                case "find":
+                    if (!(args[1] instanceof Object[])) {
+                        throw unsupported(method);
+                    }
+                    roundTrip(rttNanos);
+                    Map<String, Object> row = store.find((Class<?>) args[0], Arrays.asList((Object[]) args[1]));
+                    return row == null ? null : newEntity((Class<?>) args[0], row);
+                case "getQueryBuilder":
+                    return LocalClusterJ.proxy(QueryBuilder.class, new QueryBuilderHandler());
+                case "createQuery":
+                    return LocalClusterJ.proxy(Query.class,
+                            new QueryHandler(store, rttNanos, handlerOf(args[0], DomainHandler.class)));
+                case "currentTransaction":
+                    return LocalClusterJ.proxy(Transaction.class, new TransactionHandler(this));
+                case "flush":
+                case "setPartitionKey":
+                case "setLockMode":
+                case "markModified":
+                    return null;
+                case "release":
+                    return args[0];
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                default:
+                    throw unsupported(method);
+            }
+        }
+
+        private void save(Object entity) {
+            EntityHandler h = handlerOf(entity, EntityHandler.class);
+            store.upsert(h.type, h.values);
+        }
+    }
+
+    /**
+     * Transactions are accepted but every call is applied immediately, there is no rollback.
+     */
+    private static class TransactionHandler extends Handler {
+        private final SessionHandler session;
+
+        TransactionHandler(SessionHandler session) {
+            this.session = session;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "begin":
+                    session.transactionActive = true;
+                    return null;
+                case "commit":
+                case "rollback":
+                    session.transactionActive = false;
+                    return null;
+                case "isActive":
+                    return session.transactionActive;
+                case "setRollbackOnly":
+                    return null;
+                case "getRollbackOnly":
+                    return false;
+                default:
+                    throw unsupported(method);
+            }
+        }
+    }
+
+    private static Object newEntity(Class<?> type, Map<String, Object> values) {
+        return proxy(type, new EntityHandler(type, values));
+    }
+
+    /**
+     * Implements the getters and setters of a domain interface over a property map.
+     */
+    private static class EntityHandler extends Handler {
+        private final Class<?> type;
+        private final Map<String, Object> values;
+
+        EntityHandler(Class<?> type, Map<String, Object> values) {
+            this.type = type;
+            this.values = values;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.startsWith("set") && args.length == 1) {
+                values.put(property(name, 3), args[0]);
+                return null;
+            } else if (name.startsWith("get") && args.length == 0) {
+                return coerce(values.get(property(name, 3)), method.getReturnType());
+            } else if (name.startsWith("is") && args.length == 0) {
+                return coerce(values.get(property(name, 2)), method.getReturnType());
+            }
+            throw unsupported(method);
+        }
+
+        private static String property(String accessor, int prefix) {
+            return Character.toLowerCase(accessor.charAt(prefix)) + accessor.substring(prefix + 1);
+        }
+
+        @Override
+        String describe() {
+            return type.getSimpleName() + values;
+        }
+    }
+
+    private static class QueryBuilderHandler extends Handler {
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("createQueryDefinition")) {
+                return LocalClusterJ.proxy(QueryDomainType.class, new DomainHandler((Class<?>) args[0]));
+            }
+            throw unsupported(method);
+        }
+    }
+
+    private static class DomainHandler extends Handler {
+        private final Class<?> type;
+        private Condition where = (row, params) -> true;
+
+        DomainHandler(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "get":
+                    return operand(new Operand((String) args[0], null));
+                case "param":
+                    return operand(new Operand(null, (String) args[0]));
+                case "where":
+                    where = handlerOf(args[0], PredicateHandler.class).condition;
+                    return proxy;
+                case "not":
+                    return predicate(not(handlerOf(args[0], PredicateHandler.class).condition));
+                case "getType":
+                    return type;
+                default:
+                    throw unsupported(method);
+            }
+        }
+    }
+
+    //endregion
+
+    //region predicates
+
+    private interface Condition {
+        boolean test(Map<String, Object> row, Map<String, Object> params);
+
+        /**
+         * Property to parameter bindings that must hold for the condition to be true.
+         */
+        default Map<String, String> equalities() {
+            return new HashMap<>();
+        }
+    }
+
+    private static Condition not(Condition c) {
+        return (row, params) -> !c.test(row, params);
+    }
+
+    private static class Operand {
+        final String property;
+        final String param;
+
+        Operand(String property, String param) {
+            this.property = property;
+            this.param = param;
+        }
+
+        Object value(Map<String, Object> row, Map<String, Object> params) {
+            if (property != null) {
+                return row.get(property);
+            }
+            if (!params.containsKey(param)) {
+                throw new IllegalStateException("Parameter " + param + " is not set");
+            }
+            return params.get(param);
+        }
+    }
+
+    private static Object operand(Operand operand) {
+        return proxy(PredicateOperand.class, new OperandHandler(operand));
+    }
+
+    private static Object predicate(Condition condition) {
+        return proxy(Predicate.class, new PredicateHandler(condition));
+    }
+
+    private static class OperandHandler extends Handler {
+        private final Operand left;
+
+        OperandHandler(Operand left) {
+            this.left = left;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equal":
+                    Operand right = handlerOf(args[0], OperandHandler.class).left;
+                    return predicate(new Condition() {
+                        @Override
+                        public boolean test(Map<String, Object> row, Map<String, Object> params) {
+                            return compare(left, right, row, params, c -> c == 0);
+                        }
+
+                        @Override
+                        public Map<String, String> equalities() {
+                            Map<String, String> bindings = new HashMap<>();
+                            if (left.property != null && right.param != null) {
+                                bindings.put(left.property, right.param);
+                            } else if (right.property != null && left.param != null) {
+                                bindings.put(right.property, left.param);
+                            }
+                            return bindings;
+                        }
+                    });
+                case "greaterThan":
+                    return compareWith(args[0], c -> c > 0);
+                case "greaterEqual":
+                    return compareWith(args[0], c -> c >= 0);
+                case "lessThan":
+                    return compareWith(args[0], c -> c < 0);
+                case "lessEqual":
+                    return compareWith(args[0], c -> c <= 0);
+                case "between":
+                    Operand lower = handlerOf(args[0], OperandHandler.class).left;
+                    Operand upper = handlerOf(args[1], OperandHandler.class).left;
+                    return predicate((row, params) -> compare(left, lower, row, params, c -> c >= 0)
+                            && compare(left, upper, row, params, c -> c <= 0));
+                case "isNull":
+                    return predicate((row, params) -> left.value(row, params) == null);
+                case "isNotNull":
+                    return predicate((row, params) -> left.value(row, params) != null);
+                default:
+                    throw unsupported(method);
+            }
+        }
+
+        private Object compareWith(Object other, IntPredicate accept) {
+            Operand right = handlerOf(other, OperandHandler.class).left;
+            return predicate((row, params) -> compare(left, right, row, params, accept));
+        }
+
+        private static boolean compare(Operand left, Operand right, Map<String, Object> row,
+                                       Map<String, Object> params, IntPredicate accept) {
+            Object l = left.value(row, params);
+            Object r = right.value(row, params);
+            //like SQL, comparisons with null are never true, not even equal
+            return l != null && r != null && accept.test(LocalNdbStore.compareValues(l, r));
+        }
+    }
+
+    private static class PredicateHandler extends Handler {
+        private final Condition condition;
+
+        PredicateHandler(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "and": {
+                    Condition other = handlerOf(args[0], PredicateHandler.class).condition;
+                    return predicate(new Condition() {
+                        @Override
+                        public boolean test(Map<String, Object> row, Map<String, Object> params) {
+                            return condition.test(row, params) && other.test(row, params);
+                        }
+
+                        @Override
+                        public Map<String, String> equalities() {
+                            Map<String, String> bindings = condition.equalities();
+                            bindings.putAll(other.equalities());
+                            return bindings;
+                        }
+                    });
+                }
+                case "or": {
+                    Condition other = handlerOf(args[0], PredicateHandler.class).condition;
+                    return predicate((row, params) -> condition.test(row, params) || other.test(row, params));
+                }
+                case "not":
+                    return predicate(not(condition));
+                default:
+                    throw unsupported(method);
+            }
+        }
+    }
+
+    //endregion
+
+    private static class QueryHandler extends Handler {
+        private final LocalNdbStore store;
+        private final long rttNanos;
+        private final DomainHandler domain;
+        private final Map<String, Object> params = new HashMap<>();
+        private long skip = 0;
+        private long limit = Long.MAX_VALUE;
+
+        QueryHandler(LocalNdbStore store, long rttNanos, DomainHandler domain) {
+            this.store = store;
+            this.rttNanos = rttNanos;
+            this.domain = domain;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "setParameter":
+                    params.put((String) args[0], args[1]);
+                    return null;
+                case "setLimits":
+                    skip = ((Number) args[0]).longValue();
+                    limit = ((Number) args[1]).longValue();
+                    return null;
+                case "setOrdering":
+                    //results are always in primary key order
+                    return null;
+                case "getResultList": {
+                    roundTrip(rttNanos);
+                    List<Object> result = new ArrayList<>();
+                    for (Map<String, Object> row : store.scan(domain.type, prefix(),
+                            row -> domain.where.test(row, params), skip, limit)) {
+                        result.add(newEntity(domain.type, row));
+                    }
+                    return result;
+                }
+                case "deletePersistentAll":
+                    if (skip != 0) {
+                        throw new IllegalArgumentException("deletePersistentAll does not support skip");
+                    }
+                    roundTrip(rttNanos);
+                    return store.deleteMatching(domain.type, prefix(), row -> domain.where.test(row, params), limit);
+                case "explain": {
+                    Map<String, Object> plan = new HashMap<>();
+                    List<Object> prefix = prefix();
+                    plan.put("ScanType", prefix.isEmpty() ? "TABLE_SCAN" : "INDEX_SCAN");
+                    plan.put("IndexPrefixColumns", prefix.size());
+                    return plan;
+                }
+                default:
+                    throw unsupported(method);
+            }
+        }
+
+        /**
+         * Values of the leading primary key columns bound with equality, the range the query has to scan.
+         */
+        private List<Object> prefix() {
+            Map<String, String> bindings = domain.where.equalities();
+            List<Object> prefix = new ArrayList<>();
+            for (String column : LocalNdbStore.PRIMARY_KEY) {
+                String param = bindings.get(column);
+                if (param == null || !params.containsKey(param)) {
+                    break;
+                }
+                prefix.add(params.get(param));
+            }
+            return prefix;
+        }
+    }
+
+    static Object coerce(Object value, Class<?> type) {
+        if (type == void.class) {
+            return null;
+        }
+        if (value == null) {
+            if (!type.isPrimitive()) {
+                return null;
+            }
+            value = 0;
+        }
+        if (type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Number) {
+            Number n = (Number) value;
+            if (type == int.class || type == Integer.class) {
+                return n.intValue();
+            } else if (type == long.class || type == Long.class) {
+                return n.longValue();
+            } else if (type == short.class || type == Short.class) {
+                return n.shortValue();
+            } else if (type == byte.class || type == Byte.class) {
+                return n.byteValue();
+            } else if (type == double.class || type == Double.class) {
+                return n.doubleValue();
+            } else if (type == float.class || type == Float.class) {
+                return n.floatValue();
+            } else if (type == boolean.class || type == Boolean.class) {
+                return n.intValue() != 0;
+            }
+        }
+        if (type == byte[].class && value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        if (type == String.class) {
+            return value instanceof byte[] ? new String((byte[]) value, StandardCharsets.UTF_8) : value.toString();
+        }
+        return value;
+    }
+}
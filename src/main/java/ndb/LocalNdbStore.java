@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ndb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * In-memory tables with the KeyValue / KeyValueCommitted contract of the NDB state backend: rows are property maps
+ * ordered by (keyGroup, stateName, nameSpace, epoch, key), so scans on a key group prefix are range scans like
+ * on the ordered primary key index in NDB. The simulated RTT is a setting of the session factories, see
+ * {@link LocalClusterJ#RTT_MICROS}.
+ */
+public class LocalNdbStore {
+
+    public static final List<String> PRIMARY_KEY =
+            Collections.unmodifiableList(Arrays.asList("keyGroup", "stateName", "nameSpace", "epoch", "key"));
+
+    static final Comparator<Object> VALUE_ORDER = LocalNdbStore::compareValues;
+
+    private static final Comparator<List<Object>> KEY_ORDER = (a, b) -> {
+        int n = Math.min(a.size(), b.size());
+        for (int i = 0; i < n; i++) {
+            int c = compareValues(a.get(i), b.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        //a prefix sorts before all keys it is a prefix of
+        return Integer.compare(a.size(), b.size());
+    };
+
+    private final Map<String, ConcurrentSkipListMap<List<Object>, Map<String, Object>>> tables = new ConcurrentHashMap<>();
+
+    public void upsert(Class<?> table, Map<String, Object> row) {
+        table(table).put(primaryKey(row), new HashMap<>(row));
+    }
+
+    public boolean delete(Class<?> table, Map<String, Object> row) {
+        return table(table).remove(primaryKey(row)) != null;
+    }
+
+    public Map<String, Object> find(Class<?> table, List<Object> primaryKey) {
+        Map<String, Object> row = table(table).get(primaryKey);
+        return row == null ? null : new HashMap<>(row);
+    }
+
+    public int size(Class<?> table) {
+        return table(table).size();
+    }
+
+    /**
+     * Rows matching the filter, in primary key order. The scan is restricted to the rows starting with prefix,
+     * the leading primary key columns the query binds with equality.
+     */
+    public List<Map<String, Object>> scan(Class<?> table, List<Object> prefix, Predicate<Map<String, Object>> filter,
+                                          long skip, long limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        long skipped = 0;
+        for (Map.Entry<List<Object>, Map<String, Object>> entry : range(table, prefix)) {
+            if (!startsWith(entry.getKey(), prefix)) {
+                break;
+            }
+            if (filter.test(entry.getValue())) {
+                if (skipped++ < skip) {
+                    continue;
+                }
+                result.add(new HashMap<>(entry.getValue()));
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    public int deleteMatching(Class<?> table, List<Object> prefix, Predicate<Map<String, Object>> filter, long limit) {
+        int deleted = 0;
+        Iterator<Map.Entry<List<Object>, Map<String, Object>>> it = range(table, prefix).iterator();
+        while (it.hasNext() && deleted < limit) {
+            Map.Entry<List<Object>, Map<String, Object>> entry = it.next();
+            if (!startsWith(entry.getKey(), prefix)) {
+                break;
+            }
+            if (filter.test(entry.getValue())) {
+                it.remove();
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    public void clear() {
+        tables.clear();
+    }
+
+    private Iterable<Map.Entry<List<Object>, Map<String, Object>>> range(Class<?> table, List<Object> prefix) {
+        ConcurrentNavigableMap<List<Object>, Map<String, Object>> rows = table(table);
+        return prefix.isEmpty() ? rows.entrySet() : rows.tailMap(prefix, true).entrySet();
+    }
+
+    private ConcurrentSkipListMap<List<Object>, Map<String, Object>> table(Class<?> table) {
+        return tables.computeIfAbsent(table.getName(), name -> new ConcurrentSkipListMap<>(KEY_ORDER));
+    }
+
+    static List<Object> primaryKey(Map<String, Object> row) {
+        List<Object> key = new ArrayList<>(PRIMARY_KEY.size());
+        for (String column : PRIMARY_KEY) {
+            key.add(row.get(column));
+        }
+        return key;
+    }
+
+    private static boolean startsWith(List<Object> key, List<Object> prefix) {
+        for (int i = 0; i < prefix.size(); i++) {
+            if (compareValues(key.get(i), prefix.get(i)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Total order over the column values: null first, numbers by value regardless of their boxed type, byte arrays
+     * unsigned lexicographically like NDB compares VARBINARY columns.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareValues(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a == null) {
+            return -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            if (a instanceof Double || a instanceof Float || b instanceof Double || b instanceof Float) {
+                return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            }
+            return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+        }
+        if (a instanceof byte[] && b instanceof byte[]) {
+            byte[] x = (byte[]) a;
+            byte[] y = (byte[]) b;
+            int n = Math.min(x.length, y.length);
+            for (int i = 0; i < n; i++) {
+                int c = Integer.compare(x[i] & 0xff, y[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return Integer.compare(x.length, y.length);
+        }
+        if (a.getClass() == b.getClass() && a instanceof Comparable) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ndb;
+
+import com.mysql.clusterj.Query;
+import com.mysql.clusterj.Session;
+import com.mysql.clusterj.SessionFactory;
+import com.mysql.clusterj.query.QueryBuilder;
+import com.mysql.clusterj.query.QueryDomainType;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.contrib.streaming.state.schema.KeyValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State access pattern of the NDB backend against a cluster or, with --local true, against the embedded
+ * {@link LocalClusterJ} stand-in with a simulated round trip time (--rtt in microseconds):
+ * batched writes of a checkpoint, point lookups of single keys, key group scans of a restore and the delete of
+ * an epoch.
+ *
+ * <p>Example: {@code --local true --rtt 150 --keyGroups 128 --rows 100000 --batch 500}
+ */
+public class NdbStateAccessBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool params = ParameterTool.fromArgs(args);
+        int keyGroups = params.getInt("keyGroups", 128);
+        int rows = params.getInt("rows", 100_000);
+        int batch = params.getInt("batch", 500);
+        int lookups = params.getInt("lookups", 10_000);
+        long epoch = params.getLong("epoch", 1);
+
+        SessionFactory factory = clusterJExamples.setupNDBSession(params);
+        Session session = factory.getSession();
+
+        System.out.println("operation,operations,seconds,operationsPerSecond,microsPerOperation");
+
+        //batched writes
+        long start = System.nanoTime();
+        List<KeyValue> pending = new ArrayList<>(batch);
+        for (int i = 0; i < rows; i++) {
+            KeyValue kv = session.newInstance(KeyValue.class);
+            LocalClusterJ.setProperty(kv, "keyGroup", i % keyGroups);
+            LocalClusterJ.setProperty(kv, "stateName", "countValueState");
+            LocalClusterJ.setProperty(kv, "nameSpace", 99);
+            LocalClusterJ.setProperty(kv, "epoch", epoch);
+            LocalClusterJ.setProperty(kv, "key", "key-" + i);
+            LocalClusterJ.setProperty(kv, "value", "value-" + i);
+            pending.add(kv);
+            if (pending.size() == batch) {
+                session.savePersistentAll(pending);
+                pending.clear();
+            }
+        }
+        if (!pending.isEmpty()) {
+            session.savePersistentAll(pending);
+        }
+        report("write", rows, start);
+
+        //point lookups on the full primary key
+        QueryBuilder qb = session.getQueryBuilder();
+        QueryDomainType<KeyValue> point = qb.createQueryDefinition(KeyValue.class);
+        point.where(point.get("keyGroup").equal(point.param("keyGroup"))
+                .and(point.get("stateName").equal(point.param("stateName")))
+                .and(point.get("nameSpace").equal(point.param("nameSpace")))
+                .and(point.get("epoch").equal(point.param("epoch")))
+                .and(point.get("key").equal(point.param("key"))));
+        Query<KeyValue> pointQuery = session.createQuery(point);
+
+        start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            int row = (int) ((i * 2654435761L) % rows);
+            pointQuery.setParameter("keyGroup", row % keyGroups);
+            pointQuery.setParameter("stateName", "countValueState");
+            pointQuery.setParameter("nameSpace", 99);
+            pointQuery.setParameter("epoch", epoch);
+            pointQuery.setParameter("key", "key-" + row);
+            found += pointQuery.getResultList().size();
+        }
+        report("lookup", lookups, start);
+        if (found != lookups) {
+            throw new IllegalStateException("Expected " + lookups + " rows but found " + found);
+        }
+
+        //key group scans, like the restore of one subtask
+        QueryDomainType<KeyValue> scan = qb.createQueryDefinition(KeyValue.class);
+        scan.where(scan.get("keyGroup").equal(scan.param("keyGroup")));
+        Query<KeyValue> scanQuery = session.createQuery(scan);
+
+        start = System.nanoTime();
+        long scanned = 0;
+        for (int kg = 0; kg < keyGroups; kg++) {
+            scanQuery.setParameter("keyGroup", kg);
+            scanned += scanQuery.getResultList().size();
+        }
+        report("keyGroupScan", keyGroups, start);
+        System.out.println("# scanned rows: " + scanned);
+
+        //delete the epoch again, one key group at a time
+        QueryDomainType<KeyValue> delete = qb.createQueryDefinition(KeyValue.class);
+        delete.where(delete.get("keyGroup").equal(delete.param("keyGroup"))
+                .and(delete.get("epoch").equal(delete.param("epoch"))));
+        Query<KeyValue> deleteQuery = session.createQuery(delete);
+
+        start = System.nanoTime();
+        for (int kg = 0; kg < keyGroups; kg++) {
+            deleteQuery.setParameter("keyGroup", kg);
+            deleteQuery.setParameter("epoch", epoch);
+            deleteQuery.deletePersistentAll();
+        }
+        report("keyGroupDelete", keyGroups, start);
+
+        session.close();
+        factory.close();
+    }
+
+    private static void report(String operation, long operations, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%s,%d,%.3f,%.0f,%.1f%n", operation, operations, seconds,
+                operations / seconds, seconds * 1e6 / operations);
+    }
+}
@@ -25,22 +25,41 @@ import com.mysql.clusterj.SessionFactory;
 import com.mysql.clusterj.query.Predicate;
 import com.mysql.clusterj.query.QueryBuilder;
 import com.mysql.clusterj.query.QueryDomainType;
+import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.contrib.streaming.state.schema.KeyValue;
 import org.apache.flink.contrib.streaming.state.schema.KeyValueCommitted;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Metric;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
 import org.apache.flink.util.FlinkRuntimeException;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 public class clusterJExamples {
 
 	public static void main(String[] args) throws Exception {
+		final ParameterTool params = ParameterTool.fromArgs(args);
+
 		// set up the batch execution environment
 		//get the ClusterJ queryBuilder
-		final SessionFactory dbSessionProvider = setupNDBSession();
+		final SessionFactory dbSessionProvider = setupNDBSession(params);
 		Session db = dbSessionProvider.getSession();
 
+		if (params.getBoolean("compact", false)) {
+			compactCommittedState(params, dbSessionProvider, db);
+			return;
+		}
+
+		if (params.getBoolean("local", false)) {
+			//the embedded store starts empty, write the committed rows the recovery below reads
+			seedCommittedValueState(31, 99, 2, params.getInt("rows", 100), db);
+		}
+
 		readData(db);
 
 		List<KeyValueCommitted> values =  readCommittedValueState(31,2, db);
@@ -48,14 +67,90 @@ public class clusterJExamples {
 		recoverActiveValueState(values, db);
 	}
 
-	private static SessionFactory setupNDBSession(){
+	/**
+	 * Session factory of the cluster at localhost, or of the embedded {@link LocalClusterJ} stand-in with --local true
+	 * (--rtt sets its simulated round trip time in microseconds).
+	 */
+	static SessionFactory setupNDBSession(ParameterTool params){
 
 		Properties props = new Properties();
-		props.setProperty("com.mysql.clusterj.connectstring", "localhost");
-		props.setProperty("com.mysql.clusterj.database",  "flinkndb");
+		props.setProperty("com.mysql.clusterj.connectstring", params.get("connectstring", "localhost"));
+		props.setProperty("com.mysql.clusterj.database",  params.get("database", "flinkndb"));
+
+		if (params.getBoolean("local", false)) {
+			props.setProperty(LocalClusterJ.RTT_MICROS, params.get("rtt", "0"));
+			return LocalClusterJ.getSessionFactory(props);
+		}
 		return ClusterJHelper.getSessionFactory(props);
 	}
 
+	/**
+	 * Deletes the committed rows superseded by a newer epoch up to --epoch with the {@link EpochCompactionService}
+	 * and prints its metrics. With --local the key groups are seeded with --rows rows for every epoch up to --epoch
+	 * first, so only the rows of --epoch stay.
+	 */
+	static void compactCommittedState(ParameterTool params, SessionFactory factory, Session db) throws Exception {
+		int keyGroups = params.getInt("keygroups", 128);
+		long epoch = params.getLong("epoch", 10);
+
+		if (params.getBoolean("local", false)) {
+			for (int kg = 0; kg < keyGroups; kg++) {
+				for (long e = 0; e <= epoch; e++) {
+					seedCommittedValueState(kg, 99, e, params.getInt("rows", 100), db);
+				}
+			}
+		}
+
+		try (EpochCompactionService compaction = new EpochCompactionService(factory, KeyValueCommitted.class,
+				keyGroups, params.getInt("batch", 1000), params.getInt("sessions", 4),
+				params.getDouble("rate", 0))) {
+			PrintingMetricGroup metrics = new PrintingMetricGroup();
+			compaction.registerMetrics(metrics);
+			compaction.onCheckpointComplete(epoch);
+			compaction.compact();
+			metrics.print();
+		}
+	}
+
+	/**
+	 * Keeps the registered counters and gauges to print them, without a metric reporter.
+	 */
+	private static class PrintingMetricGroup extends UnregisteredMetricsGroup {
+		private final Map<String, Metric> metrics = new TreeMap<>();
+
+		@Override
+		public <C extends Counter> C counter(String name, C counter) {
+			metrics.put(name, counter);
+			return counter;
+		}
+
+		@Override
+		public <T, G extends Gauge<T>> G gauge(String name, G gauge) {
+			metrics.put(name, gauge);
+			return gauge;
+		}
+
+		void print() {
+			metrics.forEach((name, metric) -> System.out.println(name + ": " + (metric instanceof Counter
+					? ((Counter) metric).getCount() : ((Gauge<?>) metric).getValue())));
+		}
+	}
+
+	static void seedCommittedValueState(int kg, int nameSpace, long epoch, int rows, Session dbSession) {
+		List<KeyValueCommitted> kvList = new ArrayList<>();
+		for (int i = 0; i < rows; i++) {
+			KeyValueCommitted kvc = dbSession.newInstance(KeyValueCommitted.class);
+			LocalClusterJ.setProperty(kvc, "keyGroup", kg);
+			LocalClusterJ.setProperty(kvc, "stateName", "countValueState");
+			LocalClusterJ.setProperty(kvc, "nameSpace", nameSpace);
+			LocalClusterJ.setProperty(kvc, "epoch", epoch);
+			LocalClusterJ.setProperty(kvc, "key", "key-" + i);
+			LocalClusterJ.setProperty(kvc, "value", "value-" + i);
+			kvList.add(kvc);
+		}
+		dbSession.savePersistentAll(kvList);
+	}
+
 	private static void recoverActiveValueState(List<KeyValueCommitted> values, Session dbSession) {
 
 		List<KeyValue> kvList = new ArrayList<>();